@@ -0,0 +1,42 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Which build logs of the ITs are archived with their reports.
+ */
+public enum LogPolicy
+{
+    /**
+     * Every log is archived.
+     */
+    ALL,
+
+    /**
+     * Only the logs of the ITs which did not succeed are archived.
+     */
+    FAILURES,
+
+    /**
+     * Every log is archived, the logs of the ITs which succeeded or were skipped are truncated to their head
+     * and tail.
+     */
+    TRUNCATE_PASSING
+}
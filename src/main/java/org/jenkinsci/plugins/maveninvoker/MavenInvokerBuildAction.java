@@ -20,11 +20,13 @@ package org.jenkinsci.plugins.maveninvoker;
  * under the License.
  */
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.FilePath;
 import hudson.model.Api;
 import hudson.model.Run;
 import jenkins.model.RunAction2;
+import net.sf.json.JSONObject;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugins.invoker.model.BuildJob;
@@ -32,15 +34,35 @@ import org.apache.maven.plugins.invoker.model.io.xpp3.BuildJobXpp3Reader;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
 import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+import org.jenkinsci.plugins.maveninvoker.results.ResultsPage;
+import org.jenkinsci.plugins.maveninvoker.results.ResultsQuery;
+import org.jenkinsci.plugins.maveninvoker.storage.BlobStore;
+import org.jenkinsci.plugins.maveninvoker.storage.ReportsArchive;
+import org.jenkinsci.plugins.maveninvoker.storage.ResultsManifest;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
-import java.lang.ref.Reference;
-import java.lang.ref.WeakReference;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static org.jenkinsci.plugins.maveninvoker.MavenInvokerRecorder.STORAGE_DIRECTORY;
 
@@ -58,17 +80,60 @@ public class MavenInvokerBuildAction
      */
     private static final long serialVersionUID = 31415927L;
 
-    private transient Reference<MavenInvokerResults> mavenInvokerResults;
+    /**
+     * Results given before the action is attached to its build, afterwards they live in the
+     * {@link MavenInvokerResultsCache}.
+     */
+    private transient MavenInvokerResults pendingResults;
 
     private transient Run<?, ?> build;
 
-    private transient int passedTestCount;
+    /**
+     * Serializes the appends to the manifest of the build, guarded by this.
+     */
+    private transient Object manifestLock;
+
+    private int passedTestCount;
+
+    private int failedTestCount;
+
+    private int skippedTestCount;
+
+    private int runTests;
+
+    private double totalTime;
+
+    /**
+     * ITs much slower than in the previous builds, see {@link InvokerResult#baselineTime}.
+     */
+    private int slowerTestCount;
+
+    /**
+     * <code>false</code> for builds recorded by previous versions, where the counts are computed from the results
+     * the first time they are needed.
+     */
+    private boolean summaryStored;
 
-    private transient int failedTestCount;
+    /**
+     * Compressed size of the archived logs.
+     */
+    private long logBytes;
+
+    /**
+     * Logs left out or truncated by the {@link LogPolicy} and size limits of the recorder.
+     */
+    private int skippedLogs;
 
-    private transient int skippedTestCount;
+    private int truncatedLogs;
 
-    private transient int runTests;
+    private long skippedLogBytes;
+
+    /**
+     * Phases of the recordings of the build, <code>null</code> for builds recorded by previous versions.
+     */
+    private RecordingMetrics metrics;
+
+    private int recordings;
 
 //    private PipelineDetails pipelineDetails;
 
@@ -80,68 +145,154 @@ public class MavenInvokerBuildAction
     public MavenInvokerBuildAction( Run<?, ?> build, MavenInvokerResults mavenInvokerResults )
     {
         this.build = build;
-        this.mavenInvokerResults = new WeakReference<>( mavenInvokerResults );
+        attach( mavenInvokerResults.getInvokerResults() );
+        MavenInvokerResultsCache.get().put( MavenInvokerResultsCache.key( build ), mavenInvokerResults );
         initTestCountsFields( mavenInvokerResults );
     }
 
     public MavenInvokerBuildAction( MavenInvokerResults mavenInvokerResults)
     {
-        this.mavenInvokerResults = new WeakReference<>( mavenInvokerResults );
+        this.pendingResults = mavenInvokerResults;
         initTestCountsFields( mavenInvokerResults );
     }
 
     protected MavenInvokerBuildAction( Run<?, ?> build )
     {
         this.build = build;
+        this.summaryStored = true;
     }
 
-    protected synchronized void addResults( MavenInvokerResults mavenInvokerResults )
+    /**
+     * Stores the results of a recording of the build and adds them to the action. Concurrent recordings only
+     * wait for each other while appending their results to the manifest. The cached results are appended to
+     * under the same lock a load reads the manifest with, so a load either sees the new results and is cached
+     * after them, or misses them and is not cached: they are never counted twice.
+     */
+    void record( MavenInvokerResults mavenInvokerResults )
+        throws IOException
     {
-        MavenInvokerResults invokerResults = new MavenInvokerResults();
-        MavenInvokerResults current = this.mavenInvokerResults.get();
-        if(current!=null)
+        synchronized ( manifestLock() )
         {
-            if(current.getInvokerResults()!=null)
+            ResultsManifest.append( getStorageDirectory(), mavenInvokerResults.getInvokerResults() );
+            // now stored, the details are read again from the reports when needed
+            Map<String, Set<String>> reports = new HashMap<>();
+            for ( InvokerResult invokerResult : mavenInvokerResults.getInvokerResults() )
             {
-                invokerResults.getInvokerResults().addAll( current.getInvokerResults() );
+                if ( invokerResult.archive != null && reportEntryNames( reports, invokerResult.archive )
+                    .contains( invokerResult.getReportEntryName() ) )
+                {
+                    invokerResult.stripDetails();
+                }
             }
+            addResults( mavenInvokerResults );
         }
-        invokerResults.getInvokerResults().addAll( mavenInvokerResults.getInvokerResults() );
-        this.mavenInvokerResults = new WeakReference<>( invokerResults );
-        initTestCountsFields( mavenInvokerResults );
     }
 
-    public MavenInvokerResults getMavenInvokerResults()
+    /**
+     * @return the reports of an archive of the build, an IT whose report cannot be found keeps its details
+     */
+    private Set<String> reportEntryNames( Map<String, Set<String>> reports, String archive )
     {
-        if ( build != null )
+        return reports.computeIfAbsent( archive, name -> {
+            try
+            {
+                return new ReportsArchive( new File( getStorageDirectory(), name ) ).getReportEntryNames();
+            }
+            catch ( IOException e )
+            {
+                LoggerFactory.getLogger( getClass() ).warn( "cannot read archive " + name, e );
+                return Collections.emptySet();
+            }
+        } );
+    }
+
+    private synchronized Object manifestLock()
+    {
+        if ( manifestLock == null )
+        {
+            manifestLock = new Object();
+        }
+        return manifestLock;
+    }
+
+    protected void addResults( MavenInvokerResults mavenInvokerResults )
+    {
+        Run<?, ?> run;
+        synchronized ( this )
         {
-            if ( mavenInvokerResults == null || mavenInvokerResults.get() == null //
-                || mavenInvokerResults.get().getInvokerResults().isEmpty() )
+            run = build;
+            if ( run == null )
             {
-                FilePath directory = new FilePath( new File( build.getRootDir(), STORAGE_DIRECTORY ) );
-                FilePath[] paths = null;
-                try
+                if ( pendingResults != null )
                 {
-                    paths = directory.list( "**/maven-invoker-result*.xml" );
-                }
-                catch ( Exception e )
-                {
-                    // FIXME improve logging
-                    // ignore this error nothing to show
-                }
-                if ( paths == null )
-                {
-                    mavenInvokerResults = new WeakReference<>( new MavenInvokerResults() );
+                    pendingResults.getInvokerResults().addAll( mavenInvokerResults.getInvokerResults() );
                 }
                 else
                 {
-                    mavenInvokerResults = new WeakReference<>( loadResults( paths ) );
+                    pendingResults = mavenInvokerResults;
                 }
             }
-            MavenInvokerResults results = mavenInvokerResults.get();
+        }
+        if ( run != null )
+        {
+            attach( mavenInvokerResults.getInvokerResults() );
+            // the cached list is appended to, results recorded before are not copied
+            MavenInvokerResultsCache.get().append( MavenInvokerResultsCache.key( run ),
+                                                   mavenInvokerResults.getInvokerResults() );
+        }
+        initTestCountsFields( mavenInvokerResults );
+    }
+
+    public MavenInvokerResults getMavenInvokerResults()
+    {
+        if ( build != null )
+        {
+            return MavenInvokerResultsCache.get().get( MavenInvokerResultsCache.key( build ), () -> {
+                long start = System.nanoTime();
+                MavenInvokerResults results;
+                synchronized ( manifestLock() )
+                {
+                    results = loadResults();
+                }
+                MavenInvokerMetrics.resultsLoaded( start, results.getInvokerResults().size() );
+                attach( results.getInvokerResults() );
+                return results;
+            } );
+        }
+        return pendingResults != null ? pendingResults : new MavenInvokerResults();
+    }
+
+    private MavenInvokerResults loadResults()
+    {
+        File storage = getStorageDirectory();
+        MavenInvokerResults results = new MavenInvokerResults();
+        List<InvokerResult> manifest = ResultsManifest.read( storage );
+        if ( manifest != null )
+        {
+            results.getInvokerResults().addAll( manifest );
             return results;
         }
-        return new MavenInvokerResults();
+        // reports stored in a directory per project by previous versions
+        FilePath directory = new FilePath( storage );
+        FilePath[] paths = null;
+        try
+        {
+            paths = directory.list( "**/maven-invoker-result*.xml" );
+        }
+        catch ( Exception e )
+        {
+            // FIXME improve logging
+            // ignore this error nothing to show
+        }
+        if ( paths != null )
+        {
+            results.getInvokerResults().addAll( loadResults( paths ).getInvokerResults() );
+        }
+        for ( ReportsArchive archive : ReportsArchive.list( storage, BlobStore.get( build.getParent() ) ) )
+        {
+            results.getInvokerResults().addAll( loadResults( archive ).getInvokerResults() );
+        }
+        return results;
     }
 
     @Override
@@ -163,16 +314,21 @@ public class MavenInvokerBuildAction
     }
 
     @Override
-    public void onAttached(Run<?, ?> r)
+    public synchronized void onAttached(Run<?, ?> r)
     {
         this.build = r;
+        if ( pendingResults != null )
+        {
+            attach( pendingResults.getInvokerResults() );
+            MavenInvokerResultsCache.get().put( MavenInvokerResultsCache.key( r ), pendingResults );
+            pendingResults = null;
+        }
     }
 
     @Override
     public void onLoad(Run<?, ?> r)
     {
         this.build = r;
-        init();
     }
 
     public Api getApi()
@@ -180,26 +336,218 @@ public class MavenInvokerBuildAction
         return new Api( getMavenInvokerResults() );
     }
 
+    /**
+     * Streams the results selected by a {@link ResultsQuery} as JSON, written as they are iterated, with
+     * <code>details=true</code> to read the description and failure message of each of them from its report.
+     */
+    public void doResults( StaplerRequest req, StaplerResponse rsp )
+        throws IOException
+    {
+        ResultsQuery query = ResultsQuery.from( req );
+        boolean details = Boolean.parseBoolean( req.getParameter( "details" ) );
+        rsp.setContentType( "application/json;charset=UTF-8" );
+        try (Writer writer = new BufferedWriter( new OutputStreamWriter( rsp.getOutputStream(), //
+                                                                         StandardCharsets.UTF_8 ) ))
+        {
+            writer.write( "{\"start\":" + query.getStart() + ",\"limit\":" + query.getLimit() + ",\"results\":[" );
+            int matched = 0;
+            int end = query.getEnd();
+            for ( InvokerResult invokerResult : getMavenInvokerResults().getSortedResults( query.getSort() ) )
+            {
+                if ( !query.matches( invokerResult ) )
+                {
+                    continue;
+                }
+                if ( matched >= query.getStart() && matched < end )
+                {
+                    if ( matched > query.getStart() )
+                    {
+                        writer.write( ',' );
+                    }
+                    writer.write( toJson( invokerResult, details ).toString() );
+                }
+                matched++;
+            }
+            writer.write( "],\"total\":" + matched + ",\"more\":" + ( matched > end ) + "}" );
+        }
+    }
+
+    /**
+     * @return the page of results shown, the failures first unless the request sorts them otherwise
+     */
+    public ResultsPage getPage()
+    {
+        return ResultsQuery.from( Stapler.getCurrentRequest(), ResultsQuery.SORT_FAILURES ) //
+            .select( getMavenInvokerResults() );
+    }
+
+    /**
+     * Writes the counts of the results selected by a {@link ResultsQuery} as JSON. Without filter the counts stored
+     * with the action are used and the results are not loaded.
+     */
+    public void doSummary( StaplerRequest req, StaplerResponse rsp )
+        throws IOException
+    {
+        ResultsQuery query = ResultsQuery.from( req );
+        JSONObject summary = new JSONObject();
+        if ( query.isUnfiltered() )
+        {
+            summary.put( "total", getRunTests() );
+            summary.put( "passed", getPassedTestCount() );
+            summary.put( "failed", getFailedTestCount() );
+            summary.put( "skipped", getSkippedTestCount() );
+            summary.put( "time", getTotalTime() );
+            summary.put( "slower", getSlowerTestCount() );
+        }
+        else
+        {
+            int total = 0;
+            int passed = 0;
+            int skipped = 0;
+            int slower = 0;
+            double time = 0;
+            for ( InvokerResult invokerResult : getMavenInvokerResults().getInvokerResults() )
+            {
+                if ( query.matches( invokerResult ) )
+                {
+                    total++;
+                    passed += StringUtils.equals( invokerResult.result, BuildJob.Result.SUCCESS ) ? 1 : 0;
+                    skipped += StringUtils.equals( invokerResult.result, BuildJob.Result.SKIPPED ) ? 1 : 0;
+                    time += invokerResult.time;
+                    slower += invokerResult.isSlower() ? 1 : 0;
+                }
+            }
+            summary.put( "total", total );
+            summary.put( "passed", passed );
+            summary.put( "failed", total - passed - skipped );
+            summary.put( "skipped", skipped );
+            summary.put( "time", time );
+            summary.put( "slower", slower );
+        }
+        rsp.setContentType( "application/json;charset=UTF-8" );
+        rsp.getWriter().write( summary.toString() );
+    }
+
+    private static JSONObject toJson( InvokerResult invokerResult, boolean details )
+        throws UnsupportedEncodingException
+    {
+        JSONObject json = new JSONObject();
+        json.put( "project", invokerResult.project );
+        json.put( "name", invokerResult.name );
+        json.put( "result", invokerResult.result );
+        json.put( "time", invokerResult.time );
+        json.put( "baselineTime", invokerResult.baselineTime );
+        json.put( "flaky", invokerResult.isFlaky() );
+        json.put( "url", "result/" + invokerResult.getLink() );
+        if ( details )
+        {
+            InvokerResult detailed = invokerResult.withDetails();
+            json.put( "description", detailed.description );
+            json.put( "failureMessage", detailed.failureMessage );
+        }
+        return json;
+    }
+
+    /**
+     * Adds the logs archived and left out by a recording of the build.
+     */
+    synchronized void addLogCounts( ReportsBatch batch )
+    {
+        logBytes += batch.getLogBytes();
+        skippedLogs += batch.getSkippedLogs();
+        truncatedLogs += batch.getTruncatedLogs();
+        skippedLogBytes += batch.getSkippedLogBytes();
+    }
+
+    /**
+     * Adds the phases of a recording of the build.
+     */
+    synchronized void addMetrics( RecordingMetrics recording )
+    {
+        if ( metrics == null )
+        {
+            metrics = new RecordingMetrics();
+        }
+        metrics.add( recording );
+        recordings++;
+    }
+
+    /**
+     * @return the phases of all the recordings of the build, <code>null</code> if not measured
+     */
+    @CheckForNull
+    public synchronized RecordingMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public synchronized int getRecordings()
+    {
+        return recordings;
+    }
+
+    public synchronized long getLogBytes()
+    {
+        return logBytes;
+    }
+
+    public synchronized int getSkippedLogs()
+    {
+        return skippedLogs;
+    }
+
+    public synchronized int getTruncatedLogs()
+    {
+        return truncatedLogs;
+    }
+
+    /**
+     * @return the size of the log content not archived, whole logs or truncated parts
+     */
+    public synchronized long getSkippedLogBytes()
+    {
+        return skippedLogBytes;
+    }
+
     public int getPassedTestCount()
     {
+        initSummary();
         return passedTestCount;
     }
 
     public int getFailedTestCount()
     {
+        initSummary();
         return failedTestCount;
     }
 
     public int getSkippedTestCount()
     {
+        initSummary();
         return skippedTestCount;
     }
 
     public int getRunTests()
     {
+        initSummary();
         return runTests;
     }
 
+    public int getSlowerTestCount()
+    {
+        initSummary();
+        return slowerTestCount;
+    }
+
+    /**
+     * @return the sum of the time of all the ITs
+     */
+    public double getTotalTime()
+    {
+        initSummary();
+        return totalTime;
+    }
+
     public Run<?, ?> getBuild()
     {
         return build;
@@ -244,25 +592,15 @@ public class MavenInvokerBuildAction
     {
         try
         {
-            for ( InvokerResult result : getMavenInvokerResults().getInvokerResults() )
+            InvokerResult result = getMavenInvokerResults().getInvokerResult( URLDecoder.decode( url, "UTF-8" ) );
+            if ( result != null )
             {
-                if ( URLDecoder.decode( url, "UTF-8" ).equals( result.project ) )
-                {
-                    result.build = build;
-                    String pattern = "**/" + STORAGE_DIRECTORY + "/" + result.logFilename;
-                    FilePath[] logs = new FilePath( build.getRootDir() ).list(pattern);
-                    if ( logs.length > 0 )
-                    {
-                        FilePath tmp = logs[0].getParent().createTempDir( "invoker", "log" );
-                        logs[0].unzip( tmp );
-                        result.log = tmp.child( "build.log" ).readToString();
-                        quietClean( tmp );
-                    }
-                    return result;
-                }
+                result.build = build;
+                // the details are only held by the returned copy, not by the cached results
+                return result.withDetails();
             }
         }
-        catch (IOException | InterruptedException e)
+        catch ( UnsupportedEncodingException e )
         {
             // FIXME improve
             e.printStackTrace();
@@ -271,17 +609,22 @@ public class MavenInvokerBuildAction
         return new InvokerResult();
     }
 
-    private void quietClean(FilePath tmp){
-        try
-        {
-            tmp.deleteRecursive();
-        }
-        catch ( IOException|InterruptedException e )
+    /**
+     * Links the results to the build, to read their reports and logs and tell the flaky ones.
+     */
+    private void attach( List<InvokerResult> invokerResults )
+    {
+        for ( InvokerResult invokerResult : invokerResults )
         {
-            LoggerFactory.getLogger( getClass() ).info( "skip error deleting directory " + tmp, e);
+            invokerResult.build = build;
         }
     }
 
+    private File getStorageDirectory()
+    {
+        return new File( build.getRootDir(), STORAGE_DIRECTORY );
+    }
+
     private MavenInvokerResults loadResults( FilePath[] paths )
     {
         MavenInvokerResults results = new MavenInvokerResults();
@@ -301,6 +644,50 @@ public class MavenInvokerBuildAction
         return results;
     }
 
+    private MavenInvokerResults loadResults( ReportsArchive archive )
+    {
+        MavenInvokerResults results = new MavenInvokerResults();
+        final BuildJobXpp3Reader reader = new BuildJobXpp3Reader();
+        try (ZipFile zipFile = archive.open())
+        {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while ( entries.hasMoreElements() )
+            {
+                ZipEntry entry = entries.nextElement();
+                String name = StringUtils.removeEnd( entry.getName(), BlobStore.REFERENCE_SUFFIX );
+                if ( !name.endsWith( ReportsArchive.REPORT_ENTRY_NAME ) )
+                {
+                    continue;
+                }
+                // a report stored in the blob store of the job is read from there
+                try (InputStream inputStream = name.equals( entry.getName() ) ? zipFile.getInputStream( entry )
+                    : archive.openEntry( name ))
+                {
+                    if ( inputStream == null )
+                    {
+                        continue;
+                    }
+                    InvokerResult invokerResult = map( reader.read( inputStream ) );
+                    invokerResult.archive = archive.getName();
+                    invokerResult.setStorageDirectory(
+                        StringUtils.removeEnd( name, ReportsArchive.REPORT_ENTRY_NAME ) );
+                    invokerResult.stripDetails();
+                    results.getInvokerResults().add( invokerResult );
+                }
+                catch ( XmlPullParserException e )
+                {
+                    LoggerFactory.getLogger( getClass() ).warn( "skip invalid report " + entry.getName() + " in "
+                                                                    + archive, e );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            LoggerFactory.getLogger( getClass() ).warn( "cannot read archive " + archive, e );
+        }
+        return results;
+    }
+
     private static InvokerResult map( BuildJob buildJob)
     {
 
@@ -310,17 +697,15 @@ public class MavenInvokerBuildAction
         invokerResult.failureMessage = buildJob.getFailureMessage();
         invokerResult.name = buildJob.getName();
         invokerResult.project = buildJob.getProject();
-        invokerResult.result = buildJob.getResult();
+        invokerResult.result = InvokerResult.canonicalResult( buildJob.getResult() );
         invokerResult.time = buildJob.getTime();
-        //invokerResult.logFilename = buildJob.getProject().replace( "pom.xml", "build.log");
-        invokerResult.logFilename = StringUtils.removeEnd( invokerResult.project, "/pom.xml" );
-        invokerResult.logFilename = StringUtils.replace( invokerResult.logFilename, "/", "_" );
-        invokerResult.logFilename = invokerResult.logFilename + "/build.log.zip";
+        // the log filename is derived from the project
         return invokerResult;
     }
 
-    protected void initTestCountsFields( MavenInvokerResults miResults )
+    protected synchronized void initTestCountsFields( MavenInvokerResults miResults )
     {
+        summaryStored = true;
         for ( InvokerResult result : miResults.getInvokerResults() )
         {
             String resultStr = result.result;
@@ -350,17 +735,22 @@ public class MavenInvokerBuildAction
                 failedTestCount++;
             }
             runTests++;
+            totalTime += result.time;
+            if ( result.isSlower() )
+            {
+                slowerTestCount++;
+            }
         }
     }
 
-    protected Object readResolve()
-    {
-        init();
-        return this;
-    }
-
-    private void init()
+    /**
+     * Computes the counts of builds recorded by previous versions, which did not store them.
+     */
+    private synchronized void initSummary()
     {
-        initTestCountsFields( getMavenInvokerResults() );
+        if ( !summaryStored && build != null )
+        {
+            initTestCountsFields( getMavenInvokerResults() );
+        }
     }
 }
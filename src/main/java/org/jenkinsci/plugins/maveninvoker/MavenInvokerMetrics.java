@@ -0,0 +1,225 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.maveninvoker.RecordingMetrics.Phase;
+import org.kohsuke.stapler.StaplerProxy;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller wide metrics of the plugin since the controller started: the phases of all the recordings, the loads
+ * of the results of builds, the reads of logs and the {@link MavenInvokerResultsCache}. Shown to administrators on
+ * the manage page, and as JSON by <code>json</code>.
+ */
+@Extension
+public class MavenInvokerMetrics
+    extends ManagementLink
+    implements StaplerProxy
+{
+    public static final String URL_NAME = "maven-invoker-metrics";
+
+    private static final RecordingMetrics RECORDED = new RecordingMetrics();
+
+    private static final Timing RECORDINGS = new Timing();
+
+    private static final Timing RESULT_LOADS = new Timing();
+
+    private static final Timing LOG_READS = new Timing();
+
+    /**
+     * Adds the phases of a recording started at <code>start</code>, a {@link System#nanoTime()}.
+     */
+    static void recorded( RecordingMetrics metrics, long start, int results )
+    {
+        RECORDED.add( metrics );
+        RECORDINGS.add( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ), results );
+    }
+
+    /**
+     * Adds a load of the results of a build, missed by the {@link MavenInvokerResultsCache}.
+     */
+    static void resultsLoaded( long start, int results )
+    {
+        RESULT_LOADS.add( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ), results );
+    }
+
+    /**
+     * Adds a read of a log shown or downloaded.
+     */
+    public static void logRead( long start, long bytes )
+    {
+        LOG_READS.add( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ), bytes );
+    }
+
+    public RecordingMetrics getRecorded()
+    {
+        return RECORDED;
+    }
+
+    public Timing getRecordings()
+    {
+        return RECORDINGS;
+    }
+
+    public Timing getResultLoads()
+    {
+        return RESULT_LOADS;
+    }
+
+    public Timing getLogReads()
+    {
+        return LOG_READS;
+    }
+
+    public MavenInvokerResultsCache getCache()
+    {
+        return MavenInvokerResultsCache.get();
+    }
+
+    public void doJson( StaplerRequest req, StaplerResponse rsp )
+        throws IOException
+    {
+        JSONObject phases = new JSONObject();
+        for ( Phase phase : RECORDED.getPhases() )
+        {
+            JSONObject json = new JSONObject();
+            json.put( "millis", RECORDED.getMillis( phase ) );
+            json.put( "files", RECORDED.getFiles( phase ) );
+            json.put( "bytes", RECORDED.getBytes( phase ) );
+            phases.put( phase.name().toLowerCase( Locale.ENGLISH ), json );
+        }
+        MavenInvokerResultsCache cache = getCache();
+        JSONObject cacheJson = new JSONObject();
+        cacheJson.put( "size", cache.getSize() );
+        cacheJson.put( "estimatedBytes", cache.getEstimatedBytes() );
+        cacheJson.put( "maxBytes", cache.getMaxBytes() );
+        cacheJson.put( "hits", cache.getHitCount() );
+        cacheJson.put( "misses", cache.getMissCount() );
+        cacheJson.put( "loads", cache.getLoadCount() );
+        cacheJson.put( "evictions", cache.getEvictionCount() );
+        JSONObject metrics = new JSONObject();
+        metrics.put( "recordings", RECORDINGS.toJson() );
+        metrics.put( "phases", phases );
+        metrics.put( "resultLoads", RESULT_LOADS.toJson() );
+        metrics.put( "logReads", LOG_READS.toJson() );
+        metrics.put( "cache", cacheJson );
+        rsp.setContentType( "application/json;charset=UTF-8" );
+        rsp.getWriter().write( metrics.toString() );
+    }
+
+    @Override
+    public Object getTarget()
+    {
+        Jenkins.get().checkPermission( Jenkins.ADMINISTER );
+        return this;
+    }
+
+    @Override
+    public String getIconFileName()
+    {
+        return "/plugin/maven-invoker-plugin/icons/report.png";
+    }
+
+    @Override
+    public String getDisplayName()
+    {
+        return Messages.maveninvoker_MetricsDisplayName();
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return Messages.maveninvoker_MetricsDescription();
+    }
+
+    @Override
+    public String getUrlName()
+    {
+        return URL_NAME;
+    }
+
+    @Override
+    public Category getCategory()
+    {
+        return Category.STATUS;
+    }
+
+    /**
+     * Count, total and longest time of an operation, with the amount it handled: results or bytes.
+     */
+    public static final class Timing
+    {
+        private long count;
+
+        private long millis;
+
+        private long maxMillis;
+
+        private long amount;
+
+        synchronized void add( long millis, long amount )
+        {
+            count++;
+            this.millis += millis;
+            maxMillis = Math.max( maxMillis, millis );
+            this.amount += amount;
+        }
+
+        public synchronized long getCount()
+        {
+            return count;
+        }
+
+        public synchronized long getMillis()
+        {
+            return millis;
+        }
+
+        public synchronized long getMaxMillis()
+        {
+            return maxMillis;
+        }
+
+        public synchronized long getAmount()
+        {
+            return amount;
+        }
+
+        synchronized JSONObject toJson()
+        {
+            JSONObject json = new JSONObject();
+            json.put( "count", count );
+            json.put( "millis", millis );
+            json.put( "maxMillis", maxMillis );
+            json.put( "amount", amount );
+            return json;
+        }
+    }
+}
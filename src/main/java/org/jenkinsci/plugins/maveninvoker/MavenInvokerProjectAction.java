@@ -0,0 +1,160 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import jenkins.model.TransientActionFactory;
+import org.jenkinsci.plugins.maveninvoker.history.BuildHistory;
+import org.jenkinsci.plugins.maveninvoker.history.BuildSummary;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Trend of the IT results of a job, drawn from its {@link BuildHistory} without loading the builds.
+ */
+public class MavenInvokerProjectAction
+    implements Action
+{
+    public static final String URL_NAME = "maven-invoker-plugin-trend";
+
+    /**
+     * Builds shown by default.
+     */
+    public static final int DEFAULT_BUILDS = 50;
+
+    /**
+     * Builds shown at most, whatever is requested.
+     */
+    public static final int MAX_BUILDS = 500;
+
+    private final Job<?, ?> job;
+
+    private final BuildHistory history;
+
+    public MavenInvokerProjectAction( Job<?, ?> job, BuildHistory history )
+    {
+        this.job = job;
+        this.history = history;
+    }
+
+    public Job<?, ?> getJob()
+    {
+        return job;
+    }
+
+    /**
+     * @return the summaries of the number of builds given by the <code>builds</code> request parameter,
+     * the most recent first
+     */
+    public List<BuildSummary> getSummaries()
+    {
+        return history.getSummaries( getBuildCount() );
+    }
+
+    /**
+     * @return the summaries shown on the job page
+     */
+    public List<BuildSummary> getRecentSummaries()
+    {
+        return history.getSummaries( 10 );
+    }
+
+    public int getBuildCount()
+    {
+        StaplerRequest request = Stapler.getCurrentRequest();
+        String builds = request == null ? null : request.getParameter( "builds" );
+        if ( builds == null )
+        {
+            return DEFAULT_BUILDS;
+        }
+        try
+        {
+            return Math.max( 1, Math.min( MAX_BUILDS, Integer.parseInt( builds ) ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return DEFAULT_BUILDS;
+        }
+    }
+
+    /**
+     * @return the highest number of ITs of the given builds, to scale the trend bars
+     */
+    public int getMaxTotal( List<BuildSummary> summaries )
+    {
+        int max = 1;
+        for ( BuildSummary summary : summaries )
+        {
+            max = Math.max( max, summary.getTotal() );
+        }
+        return max;
+    }
+
+    @Override
+    public String getIconFileName()
+    {
+        return "/plugin/maven-invoker-plugin/icons/report.png";
+    }
+
+    @Override
+    public String getDisplayName()
+    {
+        return Messages.maveninvoker_TrendDisplayName();
+    }
+
+    @Override
+    public String getUrlName()
+    {
+        return URL_NAME;
+    }
+
+    /**
+     * Adds the trend to the jobs having a history.
+     */
+    @Extension
+    public static final class Factory
+        extends TransientActionFactory<Job>
+    {
+        @Override
+        public Class<Job> type()
+        {
+            return Job.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor( @NonNull Job target )
+        {
+            BuildHistory history = BuildHistory.get( target );
+            if ( history == null || history.isEmpty() )
+            {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList( new MavenInvokerProjectAction( target, history ) );
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.jenkinsci.plugins.maveninvoker;
  * under the License.
  */
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -28,29 +29,40 @@ import hudson.model.AbstractProject;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.remoting.RemoteOutputStream;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
+import hudson.util.ListBoxModel;
 import jenkins.tasks.SimpleBuildStep;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugins.invoker.model.BuildJob;
-import org.apache.maven.plugins.invoker.model.io.xpp3.BuildJobXpp3Reader;
-import org.apache.maven.plugins.invoker.model.io.xpp3.BuildJobXpp3Writer;
+import org.jenkinsci.plugins.maveninvoker.RecordingMetrics.Phase;
+import org.jenkinsci.plugins.maveninvoker.history.BuildHistory;
+import org.jenkinsci.plugins.maveninvoker.history.BuildSummary;
+import org.jenkinsci.plugins.maveninvoker.history.DurationHistory;
+import org.jenkinsci.plugins.maveninvoker.history.OutcomeHistory;
 import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
 import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+import org.jenkinsci.plugins.maveninvoker.storage.BlobStore;
+import org.jenkinsci.plugins.maveninvoker.storage.LogCodec;
+import org.jenkinsci.plugins.maveninvoker.storage.ReportsArchive;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.file.Files;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
 
 import static org.jenkinsci.plugins.maveninvoker.pipeline.MavenInvokerStepExecution.getEnclosingBlockNames;
 
@@ -80,6 +92,67 @@ public class MavenInvokerRecorder
 
     public String invokerBuildDir = DEFAULT_INVOKER_BUILD_DIR;
 
+    /**
+     * Number of threads used on the agent to parse the reports and compress the logs, <code>1</code> or less
+     * processes them one after the other.
+     */
+    public int parallelism = 1;
+
+    /**
+     * Whether the reports found in the workspace are rewritten with the enclosing Pipeline blocks prefix,
+     * by default the prefix is only kept in the recorded reports.
+     */
+    public boolean rewriteReports;
+
+    public static final long DEFAULT_TRUNCATED_LOG_BYTES = 64 * 1024;
+
+    /**
+     * Which logs are archived, <code>null</code> for all of them.
+     */
+    public LogPolicy logPolicy = LogPolicy.ALL;
+
+    /**
+     * Size the logs truncated by {@link LogPolicy#TRUNCATE_PASSING} are cut to, <code>0</code> or less for
+     * {@link #DEFAULT_TRUNCATED_LOG_BYTES}.
+     */
+    public long truncatedLogBytes = DEFAULT_TRUNCATED_LOG_BYTES;
+
+    /**
+     * Size any log is cut to, <code>0</code> or less to archive whole logs.
+     */
+    public long maxLogBytes;
+
+    /**
+     * Compressed size of the logs archived for a build, the logs past it are not archived. <code>0</code> or less
+     * when unlimited.
+     */
+    public long maxBuildLogBytes;
+
+    /**
+     * How the logs are compressed, <code>null</code> for {@link LogCodec#ZIP}.
+     */
+    public LogCodec logCodec = LogCodec.ZIP;
+
+    /**
+     * Compression level of the logs from <code>1</code>, the fastest, to <code>9</code>, the smallest.
+     * <code>0</code> or less for the default level of deflate.
+     */
+    public int compressionLevel;
+
+    /**
+     * Whether the reports and logs are stored once per job in its {@link BlobStore}, the archives of the builds
+     * only referencing them.
+     */
+    public boolean deduplicate;
+
+    public static final double DEFAULT_DURATION_REGRESSION_FACTOR = 2;
+
+    /**
+     * ITs taking more than this factor times their median time over the previous builds are reported as slower.
+     * <code>0</code> for {@link #DEFAULT_DURATION_REGRESSION_FACTOR}, negative to not report them.
+     */
+    public double durationRegressionFactor;
+
     @Deprecated
     public MavenInvokerRecorder( String reportsFilenamePattern )
     {
@@ -93,6 +166,66 @@ public class MavenInvokerRecorder
         this.invokerBuildDir = invokerBuildDir;
     }
 
+    @DataBoundSetter
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = parallelism;
+    }
+
+    @DataBoundSetter
+    public void setRewriteReports( boolean rewriteReports )
+    {
+        this.rewriteReports = rewriteReports;
+    }
+
+    @DataBoundSetter
+    public void setLogPolicy( LogPolicy logPolicy )
+    {
+        this.logPolicy = logPolicy;
+    }
+
+    @DataBoundSetter
+    public void setTruncatedLogBytes( long truncatedLogBytes )
+    {
+        this.truncatedLogBytes = truncatedLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxLogBytes( long maxLogBytes )
+    {
+        this.maxLogBytes = maxLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxBuildLogBytes( long maxBuildLogBytes )
+    {
+        this.maxBuildLogBytes = maxBuildLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setLogCodec( LogCodec logCodec )
+    {
+        this.logCodec = logCodec;
+    }
+
+    @DataBoundSetter
+    public void setCompressionLevel( int compressionLevel )
+    {
+        this.compressionLevel = compressionLevel;
+    }
+
+    @DataBoundSetter
+    public void setDeduplicate( boolean deduplicate )
+    {
+        this.deduplicate = deduplicate;
+    }
+
+    @DataBoundSetter
+    public void setDurationRegressionFactor( double durationRegressionFactor )
+    {
+        this.durationRegressionFactor = durationRegressionFactor;
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService()
     {
@@ -126,155 +259,237 @@ public class MavenInvokerRecorder
                      reportsFilenamePattern, invokerBuildDir);
         if ( workspace != null )
         {
-            FilePath[] reportsFilePaths = locateReports( workspace, reportsFilenamePattern );
-            LOGGER.info( "Found reports: {}", Arrays.asList( reportsFilePaths ) );
-            try
-            {
-                MavenInvokerResults mavenInvokerResults =
-                    parseReports( reportsFilePaths, run, pipelineDetails, workspace );
-                storeAction( run, mavenInvokerResults );
+            record( run, workspace, pipelineDetails, null, null );
+        }
+    }
 
-                // if any failure mark the build as unstable
-                for ( InvokerResult invokerResult : mavenInvokerResults.getInvokerResults() )
-                {
-                    if ( !StringUtils.equalsIgnoreCase( invokerResult.result, BuildJob.Result.SUCCESS )
-                        && !StringUtils.equalsIgnoreCase( invokerResult.result, BuildJob.Result.SKIPPED ) )
-                    {
-                        run.setResult( Result.UNSTABLE );
-                        return;
-                    }
-                }
+    /**
+     * Records some reports of the workspace and marks the build unstable if any of them failed.
+     *
+     * @param include workspace relative paths of the only reports to record, <code>null</code> to record the reports
+     * matching {@link #reportsFilenamePattern}
+     * @param exclude workspace relative paths of reports already recorded, <code>null</code> if none
+     * @return the workspace relative paths of the recorded reports
+     */
+    public List<String> record( Run<?, ?> run, FilePath workspace, PipelineDetails pipelineDetails,
+                                @CheckForNull List<String> include, @CheckForNull Set<String> exclude )
+        throws IOException
+    {
+        return record( run, workspace, pipelineDetails, include, exclude, null );
+    }
 
+    /**
+     * @param historyResults receives the recorded results instead of the histories of the job, for callers
+     * recording a build many times to add them at once with {@link #storeHistory(Run, PipelineDetails, Collection)},
+     * <code>null</code> to add them to the histories
+     * @see #record(Run, FilePath, PipelineDetails, List, Set)
+     */
+    public List<String> record( Run<?, ?> run, FilePath workspace, PipelineDetails pipelineDetails,
+                                @CheckForNull List<String> include, @CheckForNull Set<String> exclude,
+                                @CheckForNull Collection<InvokerResult> historyResults )
+        throws IOException
+    {
+        try
+        {
+            long recordingStart = System.nanoTime();
+            ReportsBatch batch = collectReports( run, workspace, pipelineDetails, include, exclude );
+            MavenInvokerResults mavenInvokerResults = batch.toMavenInvokerResults();
+            RecordingMetrics metrics = batch.getMetrics();
+            int results = mavenInvokerResults.getInvokerResults().size();
+            long start = System.nanoTime();
+            int slower = markRegressions( run, mavenInvokerResults, projectPrefix( pipelineDetails ) );
+            metrics.since( Phase.HISTORY, start, 0, 0 );
+            if ( slower > 0 )
+            {
+                LOGGER.info( "{} ITs of {} much slower than in the previous builds", slower, run );
+            }
+            start = System.nanoTime();
+            MavenInvokerBuildAction action = storeAction( run, mavenInvokerResults, batch );
+            metrics.since( Phase.STORE, start, 0, results );
+            if ( historyResults == null )
+            {
+                start = System.nanoTime();
+                storeHistory( run, pipelineDetails, mavenInvokerResults.getInvokerResults() );
+                metrics.since( Phase.HISTORY, start, 0, results );
             }
-            catch ( Exception e )
+            else
             {
-                throw new IOException( e.getMessage(), e );
+                historyResults.addAll( mavenInvokerResults.getInvokerResults() );
             }
+            action.addMetrics( metrics );
+            MavenInvokerMetrics.recorded( metrics, recordingStart, results );
+            LOGGER.info( "Recorded {} results of {}: {}", results, run, metrics );
+
+            // if any failure mark the build as unstable
+            for ( InvokerResult invokerResult : mavenInvokerResults.getInvokerResults() )
+            {
+                if ( !StringUtils.equalsIgnoreCase( invokerResult.result, BuildJob.Result.SUCCESS )
+                    && !StringUtils.equalsIgnoreCase( invokerResult.result, BuildJob.Result.SKIPPED ) )
+                {
+                    run.setResult( Result.UNSTABLE );
+                    break;
+                }
+            }
+            return batch.getReports();
+        }
+        catch ( Exception e )
+        {
+            throw new IOException( e.getMessage(), e );
         }
     }
 
     /**
-     *
+     * Adds the results to the action of the build. The run is only locked to get or create the action, so parallel
+     * branches record concurrently.
      */
-    private void storeAction( Run<?, ?> run, MavenInvokerResults mavenInvokerResults )
+    private MavenInvokerBuildAction storeAction( Run<?, ?> run, MavenInvokerResults mavenInvokerResults,
+                                                 ReportsBatch batch )
+        throws IOException
     {
+        MavenInvokerBuildAction action;
         synchronized ( run )
         {
-            MavenInvokerBuildAction action = run.getAction( MavenInvokerBuildAction.class );
+            action = run.getAction( MavenInvokerBuildAction.class );
             if ( action == null )
             {
-                action = new MavenInvokerBuildAction( mavenInvokerResults );
+                action = new MavenInvokerBuildAction( run );
                 run.addAction( action );
-
-            }
-            else
-            {
-                action.addResults( mavenInvokerResults );
             }
         }
+        action.record( mavenInvokerResults );
+        action.addLogCounts( batch );
+        return action;
     }
 
-    private MavenInvokerResults parseReports( FilePath[] reportsFilePaths, Run<?, ?> run,
-                                              PipelineDetails pipelineDetails, FilePath workspace )
-        throws Exception
+    /**
+     * Compares the time of each IT with its baseline over the previous builds, before this recording is added to
+     * the history.
+     *
+     * @return the number of slower ITs
+     */
+    private int markRegressions( Run<?, ?> run, MavenInvokerResults mavenInvokerResults,
+                                 @CheckForNull String projectPrefix )
     {
-        MavenInvokerResults mavenInvokerResults = new MavenInvokerResults();
-        final BuildJobXpp3Reader reader = new BuildJobXpp3Reader();
-        final BuildJobXpp3Writer writer = new BuildJobXpp3Writer();
-
-        for ( final FilePath filePath : reportsFilePaths )
+        if ( durationRegressionFactor < 0 )
         {
-            BuildJob buildJob = null;
-            try (InputStream inputStream = filePath.read())
-            {
-                buildJob = reader.read( inputStream );
-            }
-            String originalProjectName = buildJob.getProject();
-            InvokerResult invokerResult = map( buildJob, pipelineDetails );
-            try (OutputStream outputStream = filePath.write())
-            {
-                writer.write( outputStream, buildJob );
-            }
-            mavenInvokerResults.getInvokerResults().add( invokerResult );
-            saveReport( getMavenInvokerReportsDirectory( run, pipelineDetails, originalProjectName ), //
-                        filePath, originalProjectName, workspace );
-
+            return 0;
         }
-
-        LOGGER.info(
-            "Finished parsing Maven Invoker results (found {})", mavenInvokerResults.getInvokerResults().size());
-        return mavenInvokerResults;
-
+        DurationHistory history = DurationHistory.get( run.getParent() );
+        double factor = durationRegressionFactor > 0 ? durationRegressionFactor : DEFAULT_DURATION_REGRESSION_FACTOR;
+        return history == null ? 0
+            : history.markRegressions( run.getNumber(), mavenInvokerResults.getInvokerResults(), factor,
+                                       projectPrefix );
     }
 
+    /**
+     * Appends the counts of recorded results to the job history drawn by {@link MavenInvokerProjectAction},
+     * the outcome of each IT to the history telling the flaky ones and the time of each IT to the history telling
+     * the slower ones, whatever the enclosing blocks of the pipeline.
+     */
+    public static void storeHistory( Run<?, ?> run, PipelineDetails pipelineDetails,
+                                     Collection<InvokerResult> invokerResults )
+    {
+        try
+        {
+            BuildHistory.forJob( run.getParent() ) //
+                .append( BuildSummary.of( run.getNumber(), invokerResults ) );
+            OutcomeHistory.forJob( run.getParent() ).append( run.getNumber(), invokerResults );
+            DurationHistory.forJob( run.getParent() ) //
+                .append( run.getNumber(), invokerResults, projectPrefix( pipelineDetails ) );
+        }
+        catch ( IOException e )
+        {
+            // the histories miss this build but its results are stored
+            LOGGER.warn( "cannot update the history of {}", run.getParent(), e );
+        }
+    }
 
     /**
-     * save report
+     * Parses the reports on the agent in one call and stores the reports and logs streamed back
+     * as a single archive of the build.
      */
-    private boolean saveReport( FilePath maveninvokerDir, FilePath report, String originalProjectName,
-                                FilePath workspace)
+    private ReportsBatch collectReports( Run<?, ?> run, FilePath workspace, PipelineDetails pipelineDetails,
+                                         List<String> include, Set<String> exclude )
+        throws IOException, InterruptedException
     {
+        BlobStore blobStore = deduplicate ? BlobStore.forJob( run.getParent() ) : null;
         try
         {
-            // save report file
-            maveninvokerDir.mkdirs();
-            String name = "maven-invoker-result.xml";
-            FilePath dst = maveninvokerDir.child( name );
-            report.copyTo( dst );
-            // save build log file
-            String logsPattern = this.invokerBuildDir + "/" + //
-                StringUtils.replace( originalProjectName, "pom.xml", "*build.log" );
-            FilePath[] logs = workspace.list( logsPattern );
-
-            LOGGER.debug( "found files {} for pattern: {} and workspace: {}", Arrays.asList( logs ), logsPattern, workspace);
-
-            for ( FilePath log : logs )
+            return collectReports( run, workspace, pipelineDetails, include, exclude, blobStore );
+        }
+        catch ( BlobStore.MissingBlobsException e )
+        {
+            if ( rewriteReports && pipelinePath( pipelineDetails ) != null )
             {
-                LOGGER.debug( "save file {} to {}", log, maveninvokerDir + log.getName() );
-                dst = maveninvokerDir.child( log.getName() + ".zip" );
-                //log.copyTo( dst );
-                log.zip( dst );
-            }
-
-            if(logs.length<1){
-                String searchPattern = "**/*build.log";
-                logs = workspace.list( searchPattern );
-                LOGGER.debug( "found files {} for pattern: {} and workspace: {}", Arrays.asList( logs ), searchPattern, workspace);
+                // the reports already carry the enclosing blocks, collecting them again would add them twice
+                throw e;
             }
+            // a build deleted meanwhile released blobs the agent only referenced, they are sent this time
+            LOGGER.info( "collect the reports of {} again, {} blobs were released", run, e.getNames().size() );
+            return collectReports( run, workspace, pipelineDetails, include, exclude, blobStore );
         }
-        catch ( Exception e )
-        {
-            e.printStackTrace();
-            return false;
-        } return true;
     }
 
-    private InvokerResult map( BuildJob buildJob, PipelineDetails pipelineDetails )
+    private ReportsBatch collectReports( Run<?, ?> run, FilePath workspace, PipelineDetails pipelineDetails,
+                                         List<String> include, Set<String> exclude,
+                                         @CheckForNull BlobStore blobStore )
+        throws IOException, InterruptedException
     {
-
-        String pipelinePath = pipelinePath( pipelineDetails );
-
-        InvokerResult invokerResult = new InvokerResult();
-
-        invokerResult.description = buildJob.getDescription();
-        invokerResult.failureMessage = buildJob.getFailureMessage();
-        invokerResult.name = pipelinePath == null ? buildJob.getName() : pipelinePath + "/" + buildJob.getName();
-        invokerResult.project =
-            pipelinePath == null ? buildJob.getProject() : pipelinePath + "/" + buildJob.getProject();
-        invokerResult.result = buildJob.getResult();
-        invokerResult.time = buildJob.getTime();
-        // transform the current buildJob as well
-        if ( pipelinePath != null )
+        long logBudget = -1;
+        if ( maxBuildLogBytes > 0 )
         {
-            buildJob.setName( pipelinePath + "/" + buildJob.getName() );
-            buildJob.setProject( pipelinePath + "/" + buildJob.getProject() );
+            // what previous recordings of the build archived counts, concurrent recordings may go a bit over
+            MavenInvokerBuildAction action = run.getAction( MavenInvokerBuildAction.class );
+            logBudget = Math.max( 0, maxBuildLogBytes - ( action == null ? 0 : action.getLogBytes() ) );
+        }
+        long truncated = truncatedLogBytes > 0 ? truncatedLogBytes : DEFAULT_TRUNCATED_LOG_BYTES;
+        int level = compressionLevel > 0 ? Math.min( compressionLevel, Deflater.BEST_COMPRESSION )
+            : Deflater.DEFAULT_COMPRESSION;
+        ReportsArchive archive = ReportsArchive.create( new File( run.getRootDir(), STORAGE_DIRECTORY ) );
+        boolean stored = false;
+        try
+        {
+            long start = System.nanoTime();
+            ReportsBatch batch;
+            try (OutputStream outputStream = new FileOutputStream( archive.getFile() ))
+            {
+                batch = workspace.act( new ReportsCollector( reportsFilenamePattern, invokerBuildDir, //
+                                                             pipelinePath( pipelineDetails ), parallelism, //
+                                                             rewriteReports, new RemoteOutputStream( outputStream ) ) //
+                                        .select( include, exclude ) //
+                                        .archiveLogs( logPolicy, truncated, maxLogBytes, logBudget ) //
+                                        .compressLogs( logCodec, level ) //
+                                        .deduplicate( blobStore == null ? null : workspace.getChannel().export(
+                                            BlobStore.Index.class, blobStore::stored ) ) );
+                // make sure all the streamed bytes got delivered before using the archive
+                workspace.getChannel().syncLocalIO();
+            }
+            RecordingMetrics metrics = batch.getMetrics();
+            metrics.since( Phase.TRANSFER, start, archive.getFile().length(), 1 );
+            if ( blobStore != null )
+            {
+                start = System.nanoTime();
+                long length = archive.getFile().length();
+                blobStore.ingest( archive );
+                metrics.since( Phase.INGEST, start, length - archive.getFile().length(), 1 );
+            }
+            for ( InvokerResult invokerResult : batch.getInvokerResults() )
+            {
+                invokerResult.archive = archive.getName();
+            }
+            LOGGER.info( "Stored {} reports and {} logs in {}, {} logs skipped and {} truncated",
+                         batch.getInvokerResults().size(), batch.getLogCount(), archive, batch.getSkippedLogs(),
+                         batch.getTruncatedLogs() );
+            stored = true;
+            return batch;
+        }
+        finally
+        {
+            if ( !stored )
+            {
+                Files.deleteIfExists( archive.getFile().toPath() );
+            }
         }
-
-        invokerResult.logFilename = StringUtils.removeEnd( invokerResult.project, "/pom.xml" );
-        invokerResult.logFilename = StringUtils.replace( invokerResult.logFilename, "/", "_" );
-        invokerResult.logFilename = invokerResult.logFilename + "/build.log.zip";
-
-        return invokerResult;
     }
 
     private static String pipelinePath( PipelineDetails pipelineDetails )
@@ -290,55 +505,23 @@ public class MavenInvokerRecorder
     }
 
     /**
-     * Gets the directory to store report files
+     * @return what {@link ReportsCollector} prepends to the projects of the reports recorded by a pipeline,
+     * <code>null</code> if nothing
      */
-    private FilePath getMavenInvokerReportsDirectory( Run<?, ?> build, PipelineDetails pipelineDetails, String projectName )
+    @CheckForNull
+    static String projectPrefix( PipelineDetails pipelineDetails )
     {
         String pipelinePath = pipelinePath( pipelineDetails );
-        if ( pipelinePath == null )
-        {
-            return new FilePath( new File( build.getRootDir(), STORAGE_DIRECTORY ) );
-        }
-        pipelinePath = StringUtils.removeEnd( pipelinePath + "/" + StringUtils.removeEnd( projectName, "pom.xml" ), "/");
-        return new FilePath( new File( build.getRootDir(), STORAGE_DIRECTORY + "/" //
-            + StringUtils.replace( pipelinePath, "/", "_" ) ) );
+        return pipelinePath == null ? null : pipelinePath + "/";
     }
 
-    private FilePath[] locateReports( FilePath workspace, String filenamePattern )
-        throws IOException, InterruptedException
+    /**
+     * @return the project of a result as written in its report, without the enclosing blocks of the pipeline
+     * recording it, which always end with a space before the slash
+     */
+    public static String reportedProject( String project )
     {
-        // First use ant-style pattern
-        try
-        {
-            FilePath[] ret = workspace.list( filenamePattern );
-            if ( ret.length > 0 )
-            {
-                return ret;
-            }
-        }
-        catch ( Exception e )
-        {
-        }
-
-        // If it fails, do a legacy search
-        List<FilePath> files = new ArrayList<>();
-        String[] parts = filenamePattern.split( "\\s*[;:,]+\\s*" );
-        for ( String path : parts )
-        {
-            FilePath src = workspace.child( path );
-            if ( src.exists() )
-            {
-                if ( src.isDirectory() )
-                {
-                    files.addAll( Arrays.asList( src.list( "**/BUILD*.xml" ) ) );
-                }
-                else
-                {
-                    files.add( src );
-                }
-            }
-        }
-        return files.toArray(new FilePath[0]);
+        return project.contains( " /" ) ? StringUtils.substringAfterLast( project, " /" ) : project;
     }
 
     public static final class DescriptorImpl
@@ -355,6 +538,24 @@ public class MavenInvokerRecorder
         {
             return Messages.maveninvoker_DisplayName();
         }
+
+        public ListBoxModel doFillLogPolicyItems()
+        {
+            ListBoxModel items = new ListBoxModel();
+            items.add( Messages.maveninvoker_LogPolicyAll(), LogPolicy.ALL.name() );
+            items.add( Messages.maveninvoker_LogPolicyFailures(), LogPolicy.FAILURES.name() );
+            items.add( Messages.maveninvoker_LogPolicyTruncatePassing(), LogPolicy.TRUNCATE_PASSING.name() );
+            return items;
+        }
+
+        public ListBoxModel doFillLogCodecItems()
+        {
+            ListBoxModel items = new ListBoxModel();
+            items.add( Messages.maveninvoker_LogCodecZip(), LogCodec.ZIP.name() );
+            items.add( Messages.maveninvoker_LogCodecGzip(), LogCodec.GZIP.name() );
+            items.add( Messages.maveninvoker_LogCodecDictionary(), LogCodec.DICTIONARY.name() );
+            return items;
+        }
     }
 
     protected Object readResolve()
@@ -363,6 +564,18 @@ public class MavenInvokerRecorder
         {
             reportsFilenamePattern = filenamePattern;
         }
+        if ( logPolicy == null )
+        {
+            logPolicy = LogPolicy.ALL;
+        }
+        if ( logCodec == null )
+        {
+            logCodec = LogCodec.ZIP;
+        }
+        if ( truncatedLogBytes <= 0 )
+        {
+            truncatedLogBytes = DEFAULT_TRUNCATED_LOG_BYTES;
+        }
         return this;
     }
 
@@ -0,0 +1,318 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Controller wide cache of the {@link MavenInvokerResults} of the builds, bounded by their estimated memory
+ * and evicting the least recently used builds first. Concurrent requests for a build not in the cache wait
+ * for a single load.
+ */
+public final class MavenInvokerResultsCache
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger( MavenInvokerResultsCache.class );
+
+    /**
+     * Estimated memory the cached results may use, 64 MB by default.
+     */
+    public static final long MAX_BYTES =
+        SystemProperties.getLong( MavenInvokerResultsCache.class.getName() + ".maxBytes", 64L * 1024 * 1024 );
+
+    private static final MavenInvokerResultsCache INSTANCE = new MavenInvokerResultsCache( MAX_BYTES );
+
+    private final long maxBytes;
+
+    /**
+     * In access order, so the eldest entry is the least recently used, guarded by this.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+    /**
+     * Loads in progress, guarded by this.
+     */
+    private final Map<String, CompletableFuture<MavenInvokerResults>> loading = new HashMap<>();
+
+    private long bytes;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long loadCount;
+
+    private long evictionCount;
+
+    MavenInvokerResultsCache( long maxBytes )
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    public static MavenInvokerResultsCache get()
+    {
+        return INSTANCE;
+    }
+
+    public static String key( Run<?, ?> run )
+    {
+        return run.getExternalizableId();
+    }
+
+    /**
+     * @return the cached results, or the results of <code>loader</code>, called once whatever the number of
+     * concurrent callers
+     */
+    @NonNull
+    public MavenInvokerResults get( String key, Supplier<MavenInvokerResults> loader )
+    {
+        CompletableFuture<MavenInvokerResults> future;
+        boolean owner = false;
+        synchronized ( this )
+        {
+            Entry entry = entries.get( key );
+            if ( entry != null )
+            {
+                hitCount++;
+                return entry.results;
+            }
+            missCount++;
+            future = loading.get( key );
+            if ( future == null )
+            {
+                future = new CompletableFuture<>();
+                loading.put( key, future );
+                owner = true;
+            }
+        }
+        return owner ? load( key, loader, future ) : join( future );
+    }
+
+    private MavenInvokerResults load( String key, Supplier<MavenInvokerResults> loader,
+                                      CompletableFuture<MavenInvokerResults> future )
+    {
+        try
+        {
+            MavenInvokerResults results = loader.get();
+            synchronized ( this )
+            {
+                loadCount++;
+                // not published if the build got new results while loading
+                if ( loading.remove( key, future ) )
+                {
+                    put( key, results );
+                }
+            }
+            future.complete( results );
+            return results;
+        }
+        catch ( RuntimeException | Error e )
+        {
+            synchronized ( this )
+            {
+                loading.remove( key, future );
+            }
+            future.completeExceptionally( e );
+            throw e;
+        }
+    }
+
+    private static MavenInvokerResults join( CompletableFuture<MavenInvokerResults> future )
+    {
+        try
+        {
+            return future.join();
+        }
+        catch ( CompletionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Caches the complete results of a build.
+     */
+    public synchronized void put( String key, MavenInvokerResults results )
+    {
+        remove( key );
+        long size = estimate( results.getInvokerResults() );
+        if ( size > maxBytes )
+        {
+            LOGGER.debug( "results of {} are too large to be cached ({} bytes)", key, size );
+            return;
+        }
+        entries.put( key, new Entry( results, size ) );
+        bytes += size;
+        evict();
+    }
+
+    /**
+     * Adds new results of a build to its cached results. A load in progress is not cached as it may miss them.
+     */
+    public synchronized void append( String key, Collection<InvokerResult> invokerResults )
+    {
+        loading.remove( key );
+        Entry entry = entries.get( key );
+        if ( entry != null )
+        {
+            long size = estimate( invokerResults );
+            entry.results.getInvokerResults().addAll( invokerResults );
+            entry.size += size;
+            bytes += size;
+            evict();
+        }
+    }
+
+    public synchronized void invalidate( String key )
+    {
+        loading.remove( key );
+        remove( key );
+    }
+
+    private void remove( String key )
+    {
+        Entry entry = entries.remove( key );
+        if ( entry != null )
+        {
+            bytes -= entry.size;
+        }
+    }
+
+    private void evict()
+    {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ( bytes > maxBytes && iterator.hasNext() )
+        {
+            bytes -= iterator.next().size;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * @return number of actual loads, lower than the misses when concurrent requests share a load
+     */
+    public synchronized long getLoadCount()
+    {
+        return loadCount;
+    }
+
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    public synchronized int getSize()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes()
+    {
+        return bytes;
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "MavenInvokerResultsCache{size=" + entries.size() + ", bytes=" + bytes + ", hits=" + hitCount
+            + ", misses=" + missCount + ", loads=" + loadCount + ", evictions=" + evictionCount + '}';
+    }
+
+    static long estimate( Collection<InvokerResult> invokerResults )
+    {
+        long size = 64;
+        for ( InvokerResult invokerResult : invokerResults )
+        {
+            // the result and archive are shared with other results
+            size += 80 + estimate( invokerResult.project ) + estimate( invokerResult.name ) //
+                + estimate( invokerResult.description ) //
+                + estimate( invokerResult.failureMessage ) + estimate( invokerResult.logFilename );
+        }
+        return size;
+    }
+
+    private static long estimate( String value )
+    {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private static final class Entry
+    {
+        final MavenInvokerResults results;
+
+        long size;
+
+        Entry( MavenInvokerResults results, long size )
+        {
+            this.results = results;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Forgets the results of deleted builds.
+     */
+    @Extension
+    public static final class RunListenerImpl
+        extends RunListener<Run<?, ?>>
+    {
+        @Override
+        public void onDeleted( Run<?, ?> run )
+        {
+            get().invalidate( key( run ) );
+        }
+    }
+}
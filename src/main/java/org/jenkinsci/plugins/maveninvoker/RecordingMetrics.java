@@ -0,0 +1,212 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duration, bytes and files of each phase of recordings, measured on the agent for the phases of
+ * {@link ReportsCollector} and on the controller for the others. The reports parsed concurrently add up the time
+ * of every thread, so a phase may take longer than the recording.
+ */
+public class RecordingMetrics
+    implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    public enum Phase
+    {
+        /**
+         * Searching the workspace for the reports and the logs of each of them.
+         */
+        LOCATE,
+        /**
+         * Reading and parsing the reports.
+         */
+        PARSE,
+        /**
+         * Writing back the reports prefixed by the enclosing blocks of a pipeline.
+         */
+        REWRITE,
+        /**
+         * Hashing, truncating and compressing the logs, training the dictionary included.
+         */
+        LOGS,
+        /**
+         * Writing the reports and logs to the stream sent to the controller.
+         */
+        STREAM,
+        /**
+         * Whole call to the agent, until the streamed archive is written on the controller.
+         */
+        TRANSFER,
+        /**
+         * Moving the reports and logs of the archive to the blob store of the job.
+         */
+        INGEST,
+        /**
+         * Appending the results to the manifest and the action of the build.
+         */
+        STORE,
+        /**
+         * Appending the results to the histories of the job.
+         */
+        HISTORY;
+
+        public String getDisplayName()
+        {
+            switch ( this )
+            {
+                case LOCATE:
+                    return Messages.maveninvoker_PhaseLocate();
+                case PARSE:
+                    return Messages.maveninvoker_PhaseParse();
+                case REWRITE:
+                    return Messages.maveninvoker_PhaseRewrite();
+                case LOGS:
+                    return Messages.maveninvoker_PhaseLogs();
+                case STREAM:
+                    return Messages.maveninvoker_PhaseStream();
+                case TRANSFER:
+                    return Messages.maveninvoker_PhaseTransfer();
+                case INGEST:
+                    return Messages.maveninvoker_PhaseIngest();
+                case STORE:
+                    return Messages.maveninvoker_PhaseStore();
+                default:
+                    return Messages.maveninvoker_PhaseHistory();
+            }
+        }
+    }
+
+    /**
+     * Guarded by this.
+     */
+    private final Map<Phase, PhaseMetrics> phases = new EnumMap<>( Phase.class );
+
+    /**
+     * Adds the cost of a phase, called once per file or once for the whole phase.
+     */
+    public synchronized void add( Phase phase, long nanos, long bytes, int files )
+    {
+        PhaseMetrics metrics = phases.computeIfAbsent( phase, p -> new PhaseMetrics() );
+        metrics.nanos += nanos;
+        metrics.bytes += bytes;
+        metrics.files += files;
+    }
+
+    /**
+     * Adds the cost of a phase started at <code>start</code>, a {@link System#nanoTime()}.
+     */
+    public void since( Phase phase, long start, long bytes, int files )
+    {
+        add( phase, System.nanoTime() - start, bytes, files );
+    }
+
+    public void add( RecordingMetrics other )
+    {
+        for ( Phase phase : Phase.values() )
+        {
+            PhaseMetrics metrics = other.get( phase );
+            if ( metrics != null )
+            {
+                add( phase, metrics.nanos, metrics.bytes, metrics.files );
+            }
+        }
+    }
+
+    private synchronized PhaseMetrics get( Phase phase )
+    {
+        PhaseMetrics metrics = phases.get( phase );
+        return metrics == null ? null : metrics.copy();
+    }
+
+    public long getMillis( Phase phase )
+    {
+        PhaseMetrics metrics = get( phase );
+        return metrics == null ? 0 : TimeUnit.NANOSECONDS.toMillis( metrics.nanos );
+    }
+
+    public long getBytes( Phase phase )
+    {
+        PhaseMetrics metrics = get( phase );
+        return metrics == null ? 0 : metrics.bytes;
+    }
+
+    public int getFiles( Phase phase )
+    {
+        PhaseMetrics metrics = get( phase );
+        return metrics == null ? 0 : metrics.files;
+    }
+
+    /**
+     * @return the phases measured, in the order they run
+     */
+    @NonNull
+    public synchronized List<Phase> getPhases()
+    {
+        return new ArrayList<>( phases.keySet() );
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        for ( Map.Entry<Phase, PhaseMetrics> entry : phases.entrySet() )
+        {
+            PhaseMetrics metrics = entry.getValue();
+            text.append( text.length() == 0 ? "" : ", " ) //
+                .append( entry.getKey().name().toLowerCase( Locale.ENGLISH ) ).append( ' ' ) //
+                .append( TimeUnit.NANOSECONDS.toMillis( metrics.nanos ) ).append( "ms/" ) //
+                .append( metrics.files ).append( " files/" ).append( metrics.bytes ).append( " bytes" );
+        }
+        return text.toString();
+    }
+
+    private static final class PhaseMetrics
+        implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        long nanos;
+
+        long bytes;
+
+        int files;
+
+        PhaseMetrics copy()
+        {
+            PhaseMetrics copy = new PhaseMetrics();
+            copy.nanos = nanos;
+            copy.bytes = bytes;
+            copy.files = files;
+            return copy;
+        }
+    }
+}
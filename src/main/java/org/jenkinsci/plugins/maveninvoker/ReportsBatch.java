@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Results of a single {@link ReportsCollector} pass sent back from the agent.
+ * The reports and logs themselves travel separately as one zip stream.
+ */
+public class ReportsBatch
+    implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final List<InvokerResult> invokerResults = new ArrayList<>();
+
+    private final List<String> reports = new ArrayList<>();
+
+    private int logCount;
+
+    private long logBytes;
+
+    private int truncatedLogs;
+
+    private int skippedLogs;
+
+    private long skippedLogBytes;
+
+    private final RecordingMetrics metrics = new RecordingMetrics();
+
+    @NonNull
+    public List<InvokerResult> getInvokerResults()
+    {
+        return invokerResults;
+    }
+
+    /**
+     * @return the workspace relative paths of the collected reports, with forward slashes
+     */
+    @NonNull
+    public List<String> getReports()
+    {
+        return reports;
+    }
+
+    public int getLogCount()
+    {
+        return logCount;
+    }
+
+    /**
+     * @return the compressed size of the archived logs
+     */
+    public long getLogBytes()
+    {
+        return logBytes;
+    }
+
+    /**
+     * @return the number of logs archived without some of their content
+     */
+    public int getTruncatedLogs()
+    {
+        return truncatedLogs;
+    }
+
+    /**
+     * @return the number of logs not archived
+     */
+    public int getSkippedLogs()
+    {
+        return skippedLogs;
+    }
+
+    /**
+     * @return the size of the log content not archived, whole logs or truncated parts
+     */
+    public long getSkippedLogBytes()
+    {
+        return skippedLogBytes;
+    }
+
+    /**
+     * @return the cost of the phases of the recording, completed on the controller
+     */
+    @NonNull
+    public RecordingMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    void addLog( long compressedBytes, long truncatedBytes )
+    {
+        logCount++;
+        logBytes += compressedBytes;
+        if ( truncatedBytes > 0 )
+        {
+            truncatedLogs++;
+            skippedLogBytes += truncatedBytes;
+        }
+    }
+
+    void skipLog( long bytes )
+    {
+        skippedLogs++;
+        skippedLogBytes += bytes;
+    }
+
+    public MavenInvokerResults toMavenInvokerResults()
+    {
+        MavenInvokerResults mavenInvokerResults = new MavenInvokerResults();
+        mavenInvokerResults.getInvokerResults().addAll( invokerResults );
+        return mavenInvokerResults;
+    }
+}
@@ -0,0 +1,1066 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Util;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.apache.maven.plugins.invoker.model.io.xpp3.BuildJobXpp3Reader;
+import org.apache.maven.plugins.invoker.model.io.xpp3.BuildJobXpp3Writer;
+import org.apache.tools.ant.BuildException;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.jenkinsci.plugins.maveninvoker.RecordingMetrics.Phase;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.results.ResultsQuery;
+import org.jenkinsci.plugins.maveninvoker.storage.BlobStore;
+import org.jenkinsci.plugins.maveninvoker.storage.LogCodec;
+import org.jenkinsci.plugins.maveninvoker.storage.LogDictionary;
+import org.jenkinsci.plugins.maveninvoker.storage.LogStreams;
+import org.jenkinsci.plugins.maveninvoker.storage.ReportsArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Locates, parses and maps all the Maven Invoker reports of a workspace in a single pass on the agent.
+ * Reports and build logs are packed into one zip stream written to {@link #out}, so the controller
+ * only pays for the bytes moved instead of several remoting calls per report.
+ */
+class ReportsCollector
+    extends MasterToSlaveFileCallable<ReportsBatch>
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( ReportsCollector.class );
+
+    /**
+     * Reports whose logs are sampled to train the dictionary of {@link LogCodec#DICTIONARY}.
+     */
+    private static final int DICTIONARY_REPORTS = 16;
+
+    private static final long DICTIONARY_SAMPLE_BYTES = 64 * 1024;
+
+    private static final String LOG_SUFFIX = "build.log";
+
+    /**
+     * Reports hashed before asking the controller in a single round trip which of their blobs it stores.
+     */
+    private static final int DEDUPLICATED_CHUNK = 1000;
+
+    private final String reportsFilenamePattern;
+
+    private final String invokerBuildDir;
+
+    private final String pipelinePath;
+
+    private final int parallelism;
+
+    private final boolean rewriteReports;
+
+    private final RemoteOutputStream out;
+
+    /**
+     * Workspace relative paths of the only reports to collect, <code>null</code> to locate them with
+     * {@link #reportsFilenamePattern}.
+     */
+    private List<String> include;
+
+    /**
+     * Workspace relative paths of reports already recorded, <code>null</code> if none.
+     */
+    private Set<String> exclude;
+
+    private LogPolicy logPolicy = LogPolicy.ALL;
+
+    /**
+     * Size the logs truncated by {@link LogPolicy#TRUNCATE_PASSING} are cut to.
+     */
+    private long truncatedLogBytes = MavenInvokerRecorder.DEFAULT_TRUNCATED_LOG_BYTES;
+
+    /**
+     * Size any log is cut to, <code>0</code> or less to keep whole logs.
+     */
+    private long maxLogBytes;
+
+    /**
+     * Compressed bytes of logs still allowed, negative when unlimited. Only written by the thread writing the
+     * stream.
+     */
+    private long logBudget = -1;
+
+    private LogCodec logCodec = LogCodec.ZIP;
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Dictionary of {@link LogCodec#DICTIONARY}, trained on the agent.
+     */
+    private transient byte[] dictionary;
+
+    /**
+     * Blobs already stored by the job, asked to the controller for each report, <code>null</code> when the reports
+     * and logs are not deduplicated.
+     */
+    private BlobStore.Index storedBlobs;
+
+    /**
+     * Blobs written to the stream by this recording. Only used by the thread writing the stream.
+     */
+    private transient Set<String> writtenBlobs;
+
+    /**
+     * Compressed logs waiting in temporary files to be copied to the stream, deleted once copied or when the
+     * collection fails.
+     */
+    private transient Set<File> spilledLogs;
+
+    /**
+     * Directories of the archive already holding the report of an IT, two reports mapping to the same directory
+     * would otherwise write duplicate entries.
+     */
+    private transient Set<String> storageNames;
+
+    /**
+     * Build logs of the {@link #invokerBuildDir} by directory relative to it, found by a single walk the first time
+     * the logs of a report are needed. Guarded by this.
+     */
+    private transient Map<String, List<File>> logsByDirectory;
+
+    ReportsCollector( String reportsFilenamePattern, String invokerBuildDir, String pipelinePath, int parallelism,
+                      boolean rewriteReports, RemoteOutputStream out )
+    {
+        this.reportsFilenamePattern = reportsFilenamePattern;
+        this.invokerBuildDir = invokerBuildDir;
+        this.pipelinePath = pipelinePath;
+        this.parallelism = parallelism;
+        this.rewriteReports = rewriteReports;
+        this.out = out;
+    }
+
+    /**
+     * Restricts the reports collected.
+     */
+    ReportsCollector select( @CheckForNull List<String> include, @CheckForNull Set<String> exclude )
+    {
+        this.include = include;
+        this.exclude = exclude;
+        return this;
+    }
+
+    /**
+     * Restricts the logs archived.
+     *
+     * @param logBudget compressed bytes of logs allowed, negative when unlimited
+     */
+    ReportsCollector archiveLogs( LogPolicy logPolicy, long truncatedLogBytes, long maxLogBytes, long logBudget )
+    {
+        this.logPolicy = logPolicy == null ? LogPolicy.ALL : logPolicy;
+        this.truncatedLogBytes = truncatedLogBytes;
+        this.maxLogBytes = maxLogBytes;
+        this.logBudget = logBudget;
+        return this;
+    }
+
+    /**
+     * @param compressionLevel see {@link Deflater#setLevel(int)}
+     */
+    ReportsCollector compressLogs( LogCodec logCodec, int compressionLevel )
+    {
+        this.logCodec = logCodec == null ? LogCodec.ZIP : logCodec;
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /**
+     * Sends the reports and logs as blobs named after the hash of their content, only referenced if already stored.
+     *
+     * @param storedBlobs blobs stored by the job, exported by the controller, <code>null</code> to store the reports
+     * and logs in the archive
+     */
+    ReportsCollector deduplicate( @CheckForNull BlobStore.Index storedBlobs )
+    {
+        this.storedBlobs = storedBlobs;
+        return this;
+    }
+
+    @Override
+    public ReportsBatch invoke( File workspace, VirtualChannel channel )
+        throws IOException, InterruptedException
+    {
+        ReportsBatch batch = new ReportsBatch();
+        RecordingMetrics metrics = batch.getMetrics();
+        long start = System.nanoTime();
+        List<File> reports = new ArrayList<>();
+        if ( include != null )
+        {
+            for ( String path : include )
+            {
+                File report = new File( workspace, path );
+                if ( report.isFile() )
+                {
+                    reports.add( report );
+                }
+            }
+        }
+        else
+        {
+            reports = locateReports( workspace, reportsFilenamePattern );
+        }
+        if ( exclude != null )
+        {
+            reports.removeIf( report -> exclude.contains( relativePath( workspace, report ) ) );
+        }
+        metrics.since( Phase.LOCATE, start, 0, reports.size() );
+        LOGGER.info( "Found reports: {}", reports );
+
+        writtenBlobs = new HashSet<>();
+        storageNames = new HashSet<>();
+        spilledLogs = Collections.synchronizedSet( new HashSet<>() );
+        try (ZipOutputStream zip = new ZipOutputStream( new BufferedOutputStream( out ) ))
+        {
+            if ( logCodec == LogCodec.DICTIONARY )
+            {
+                start = System.nanoTime();
+                dictionary = trainDictionary( workspace, reports );
+                metrics.since( Phase.LOGS, start, 0, 0 );
+                if ( dictionary != null )
+                {
+                    zip.putNextEntry( new ZipEntry( LogCodec.DICTIONARY_ENTRY_NAME ) );
+                    zip.write( dictionary );
+                    zip.closeEntry();
+                }
+            }
+            if ( parallelism > 1 && reports.size() > 1 )
+            {
+                collectParallel( workspace, reports, zip, batch );
+            }
+            else
+            {
+                // one report at a time unless asking the controller for the stored blobs
+                for ( List<File> chunk : chunks( reports, storedBlobs == null ? 1 : DEDUPLICATED_CHUNK ) )
+                {
+                    List<CollectedReport> collected = new ArrayList<>( chunk.size() );
+                    for ( File report : chunk )
+                    {
+                        collected.add( collect( workspace, report, metrics ) );
+                    }
+                    askStoredBlobs( collected );
+                    for ( CollectedReport report : collected )
+                    {
+                        write( compressLogs( report, metrics ), zip, batch );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            synchronized ( spilledLogs )
+            {
+                for ( File spilled : spilledLogs )
+                {
+                    Files.deleteIfExists( spilled.toPath() );
+                }
+                spilledLogs.clear();
+            }
+        }
+
+        LOGGER.info( "Finished parsing Maven Invoker results (found {})", batch.getInvokerResults().size() );
+        return batch;
+    }
+
+    /**
+     * Parses and compresses the reports with a bounded pool, while the results are still written in the
+     * order of the reports. Only a window of twice the pool size is kept, the compressed logs of the window
+     * waiting on disk. When deduplicating, the reports of a chunk are first parsed and their blobs hashed, then
+     * the controller is asked once which of them it stores before the logs are compressed.
+     */
+    private void collectParallel( File workspace, List<File> reports, ZipOutputStream zip, ReportsBatch batch )
+        throws IOException, InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( parallelism, new NamingThreadFactory(
+            new DaemonThreadFactory(), ReportsCollector.class.getSimpleName() ) );
+        RecordingMetrics metrics = batch.getMetrics();
+        try
+        {
+            for ( List<File> chunk : chunks( reports, storedBlobs == null ? reports.size() : DEDUPLICATED_CHUNK ) )
+            {
+                List<Callable<CollectedReport>> tasks = new ArrayList<>( chunk.size() );
+                if ( storedBlobs == null )
+                {
+                    for ( File report : chunk )
+                    {
+                        tasks.add( () -> compressLogs( collect( workspace, report, metrics ), metrics ) );
+                    }
+                }
+                else
+                {
+                    List<Future<CollectedReport>> hashed = new ArrayList<>( chunk.size() );
+                    for ( File report : chunk )
+                    {
+                        hashed.add( executor.submit( () -> collect( workspace, report, metrics ) ) );
+                    }
+                    List<CollectedReport> collected = new ArrayList<>( chunk.size() );
+                    for ( Future<CollectedReport> future : hashed )
+                    {
+                        collected.add( get( future ) );
+                    }
+                    askStoredBlobs( collected );
+                    for ( CollectedReport report : collected )
+                    {
+                        tasks.add( () -> compressLogs( report, metrics ) );
+                    }
+                }
+                writeInOrder( executor, tasks, zip, batch );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            // the logs spilled by the tasks still running are deleted once they are over
+            executor.awaitTermination( 1, TimeUnit.MINUTES );
+        }
+    }
+
+    private void writeInOrder( ExecutorService executor, List<Callable<CollectedReport>> tasks, ZipOutputStream zip,
+                               ReportsBatch batch )
+        throws IOException, InterruptedException
+    {
+        Deque<Future<CollectedReport>> window = new ArrayDeque<>();
+        Iterator<Callable<CollectedReport>> iterator = tasks.iterator();
+        while ( iterator.hasNext() || !window.isEmpty() )
+        {
+            while ( iterator.hasNext() && window.size() < 2 * parallelism )
+            {
+                window.add( executor.submit( iterator.next() ) );
+            }
+            write( get( window.poll() ), zip, batch );
+        }
+    }
+
+    private static CollectedReport get( Future<CollectedReport> future )
+        throws IOException, InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException( e.getCause() );
+        }
+    }
+
+    /**
+     * @return the reports in chunks of at most <code>size</code> reports
+     */
+    private static List<List<File>> chunks( List<File> reports, int size )
+    {
+        List<List<File>> chunks = new ArrayList<>();
+        for ( int i = 0; i < reports.size(); i += size )
+        {
+            chunks.add( reports.subList( i, Math.min( reports.size(), i + size ) ) );
+        }
+        return chunks;
+    }
+
+    /**
+     * Asks the controller in a single round trip which blobs of the reports it already stores.
+     */
+    private void askStoredBlobs( List<CollectedReport> collected )
+        throws IOException
+    {
+        if ( storedBlobs == null )
+        {
+            return;
+        }
+        List<String> blobs = new ArrayList<>();
+        for ( CollectedReport report : collected )
+        {
+            blobs.add( report.xmlBlob );
+            blobs.addAll( report.logBlobs.values() );
+        }
+        Set<String> stored = storedBlobs.stored( blobs );
+        for ( CollectedReport report : collected )
+        {
+            report.storedBlobs = stored;
+        }
+    }
+
+    private CollectedReport collect( File workspace, File report, RecordingMetrics metrics )
+        throws IOException
+    {
+        long start = System.nanoTime();
+        byte[] content = Files.readAllBytes( report.toPath() );
+        BuildJob buildJob;
+        try
+        {
+            buildJob = new BuildJobXpp3Reader().read( new ByteArrayInputStream( content ) );
+        }
+        catch ( XmlPullParserException e )
+        {
+            throw new IOException( "Cannot parse report " + report + ": " + e.getMessage(), e );
+        }
+        metrics.since( Phase.PARSE, start, content.length, 1 );
+        String originalProjectName = buildJob.getProject();
+        InvokerResult invokerResult = map( buildJob, pipelinePath );
+        CollectedReport collected = new CollectedReport( invokerResult, //
+                                                         InvokerResult.storageDirectory( invokerResult.project ),
+                                                         relativePath( workspace, report ) );
+
+        if ( pipelinePath == null )
+        {
+            // nothing changed, the report is archived as is
+            collected.xml = content;
+        }
+        else
+        {
+            // the enclosing blocks prefix is only kept in the recorded report unless asked otherwise
+            start = System.nanoTime();
+            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            new BuildJobXpp3Writer().write( xml, buildJob );
+            collected.xml = xml.toByteArray();
+            if ( rewriteReports )
+            {
+                Files.write( report.toPath(), collected.xml );
+            }
+            metrics.since( Phase.REWRITE, start, collected.xml.length, rewriteReports ? 1 : 0 );
+        }
+        if ( storedBlobs != null )
+        {
+            collected.xmlBlob = Util.toHexString( sha256().digest( collected.xml ) ) + ".xml";
+        }
+
+        long limit = logLimit( collected.invokerResult );
+        start = System.nanoTime();
+        List<File> logs = locateLogs( workspace, originalProjectName );
+        metrics.since( Phase.LOCATE, start, 0, logs.size() );
+        // the logs compressed with the dictionary of a recording cannot be shared
+        if ( storedBlobs != null && limit != 0 && logCodec != LogCodec.DICTIONARY )
+        {
+            start = System.nanoTime();
+            for ( File log : logs )
+            {
+                long kept = limit < 0 ? log.length() : Math.min( log.length(), limit );
+                MessageDigest digest = sha256();
+                try (OutputStream content = new DigestOutputStream( NullOutputStream.NULL_OUTPUT_STREAM, digest ))
+                {
+                    copyKept( log, kept, content );
+                }
+                collected.logBlobs.put( log, Util.toHexString( digest.digest() ) + logCodec.getSuffix() );
+            }
+            metrics.since( Phase.LOGS, start, 0, 0 );
+        }
+        collected.logLimit = limit;
+        collected.logFiles = logs;
+        return collected;
+    }
+
+    /**
+     * Compresses the logs of a report not already stored by the job.
+     */
+    private CollectedReport compressLogs( CollectedReport collected, RecordingMetrics metrics )
+        throws IOException
+    {
+        long limit = collected.logLimit;
+        for ( File log : collected.logFiles )
+        {
+            long start = System.nanoTime();
+            long length = log.length();
+            if ( limit == 0 )
+            {
+                LOGGER.debug( "skip file {} of {}", log, collected.storageName );
+                collected.logs.put( log.getName() + logCodec.getSuffix(),
+                                    new CollectedLog( null, 0, null, length, length ) );
+                continue;
+            }
+            LOGGER.debug( "save file {} to {}", log, collected.storageName + log.getName() );
+            long kept = limit < 0 ? length : Math.min( length, limit );
+            String blob = collected.logBlobs.get( log );
+            if ( blob != null && collected.storedBlobs.contains( blob ) )
+            {
+                // already stored, not even compressed
+                collected.logs.put( log.getName() + logCodec.getSuffix(),
+                                    new CollectedLog( null, 0, blob, length, length - kept ) );
+                metrics.since( Phase.LOGS, start, kept, 1 );
+                continue;
+            }
+            CRC32 crc = new CRC32();
+            File zip = compressLog( log, kept, crc );
+            collected.logs.put( log.getName() + logCodec.getSuffix(),
+                                new CollectedLog( zip, crc.getValue(), blob, length, length - kept ) );
+            metrics.since( Phase.LOGS, start, kept, 1 );
+        }
+        return collected;
+    }
+
+    /**
+     * @return the number of bytes of the logs of an IT to archive, <code>0</code> to skip them and negative to
+     * archive them whole
+     */
+    private long logLimit( InvokerResult invokerResult )
+    {
+        boolean failure = ResultsQuery.isFailure( invokerResult );
+        if ( !failure && logPolicy == LogPolicy.FAILURES )
+        {
+            return 0;
+        }
+        long limit = maxLogBytes > 0 ? maxLogBytes : -1;
+        if ( !failure && logPolicy == LogPolicy.TRUNCATE_PASSING && truncatedLogBytes > 0 )
+        {
+            limit = limit < 0 ? truncatedLogBytes : Math.min( limit, truncatedLogBytes );
+        }
+        return limit;
+    }
+
+    private void write( CollectedReport collected, ZipOutputStream zip, ReportsBatch batch )
+        throws IOException
+    {
+        long start = System.nanoTime();
+        long written = 0;
+        int files = 0;
+        uniqueStorageName( collected );
+        String reportName = collected.storageName + ReportsArchive.REPORT_ENTRY_NAME;
+        if ( collected.xmlBlob == null )
+        {
+            zip.putNextEntry( new ZipEntry( reportName ) );
+            zip.write( collected.xml );
+            zip.closeEntry();
+            written += collected.xml.length;
+            files++;
+        }
+        else
+        {
+            if ( writeBlob( collected, collected.xmlBlob ) )
+            {
+                zip.putNextEntry( new ZipEntry( BlobStore.BLOB_ENTRY_PREFIX + collected.xmlBlob ) );
+                zip.write( collected.xml );
+                zip.closeEntry();
+                written += collected.xml.length;
+                files++;
+            }
+            putReference( zip, reportName, collected.xmlBlob );
+        }
+        for ( Map.Entry<String, CollectedLog> entry : collected.logs.entrySet() )
+        {
+            CollectedLog log = entry.getValue();
+            try
+            {
+                long logBytes = write( collected, entry.getKey(), log, zip, batch );
+                written += logBytes;
+                files += logBytes > 0 ? 1 : 0;
+            }
+            finally
+            {
+                if ( log.zip != null )
+                {
+                    spilledLogs.remove( log.zip );
+                    Files.deleteIfExists( log.zip.toPath() );
+                }
+            }
+        }
+        batch.getInvokerResults().add( collected.invokerResult );
+        batch.getReports().add( collected.path );
+        batch.getMetrics().since( Phase.STREAM, start, written, files );
+    }
+
+    /**
+     * Suffixes the directory of a report already used by another one of the archive with a counter, recording it in
+     * the result so its report and logs are still found.
+     */
+    private void uniqueStorageName( CollectedReport collected )
+    {
+        String directory = StringUtils.removeEnd( collected.storageName, "/" );
+        String name = collected.storageName;
+        for ( int counter = 2; !storageNames.add( name ); counter++ )
+        {
+            name = directory + "-" + counter + "/";
+        }
+        if ( !name.equals( collected.storageName ) )
+        {
+            LOGGER.warn( "store the report {} of {} in {}, {} already holds another report", collected.path,
+                         collected.invokerResult.project, name, collected.storageName );
+            collected.storageName = name;
+            collected.invokerResult.setStorageDirectory( name );
+        }
+    }
+
+    /**
+     * @return the compressed bytes of the log written to the stream
+     */
+    private long write( CollectedReport collected, String logName, CollectedLog log, ZipOutputStream zip,
+                        ReportsBatch batch )
+        throws IOException
+    {
+        String name = collected.storageName + logName;
+        if ( log.blob != null && !writeBlob( collected, log.blob ) )
+        {
+            // stored by a previous recording or another IT, no new bytes
+            putReference( zip, name, log.blob );
+            batch.addLog( 0, log.skipped );
+            return 0;
+        }
+        long length = log.zip == null ? 0 : log.zip.length();
+        if ( log.zip == null || logBudget >= 0 && length > logBudget )
+        {
+            if ( log.blob != null )
+            {
+                writtenBlobs.remove( log.blob );
+            }
+            batch.skipLog( log.length );
+            return 0;
+        }
+        if ( log.blob == null )
+        {
+            putStored( zip, name, log.zip, log.crc );
+        }
+        else
+        {
+            putStored( zip, BlobStore.BLOB_ENTRY_PREFIX + log.blob, log.zip, log.crc );
+            putReference( zip, name, log.blob );
+        }
+        if ( logBudget >= 0 )
+        {
+            logBudget -= length;
+        }
+        batch.addLog( length, log.skipped );
+        return length;
+    }
+
+    /**
+     * @return <code>true</code> if a blob has to be written, <code>false</code> if it is already stored or written
+     */
+    private boolean writeBlob( CollectedReport collected, String blob )
+    {
+        return !collected.storedBlobs.contains( blob ) && writtenBlobs.add( blob );
+    }
+
+    private static void putReference( ZipOutputStream zip, String name, String blob )
+        throws IOException
+    {
+        zip.putNextEntry( new ZipEntry( name + BlobStore.REFERENCE_SUFFIX ) );
+        zip.write( blob.getBytes( StandardCharsets.UTF_8 ) );
+        zip.closeEntry();
+    }
+
+    private static MessageDigest sha256()
+        throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IOException( e );
+        }
+    }
+
+    static String relativePath( File workspace, File file )
+    {
+        return workspace.toPath().relativize( file.toPath() ).toString().replace( File.separatorChar, '/' );
+    }
+
+    /**
+     * @return the build logs of an IT, next to its pom in the {@link #invokerBuildDir}
+     */
+    List<File> locateLogs( File workspace, String originalProjectName )
+        throws IOException
+    {
+        if ( originalProjectName == null )
+        {
+            return new ArrayList<>();
+        }
+        String directory = StringUtils.substringBeforeLast( originalProjectName, "/" );
+        String name = StringUtils.substringAfterLast( originalProjectName, "/" );
+        if ( !originalProjectName.contains( "/" ) )
+        {
+            directory = "";
+            name = originalProjectName;
+        }
+        if ( !name.endsWith( "pom.xml" ) || directory.contains( "pom.xml" ) || directory.startsWith( "/" )
+            || directory.contains( "./" ) || StringUtils.containsAny( originalProjectName, "*?\\" ) )
+        {
+            // not a plain path to a pom, matched as before
+            String logsPattern = this.invokerBuildDir + "/" + //
+                StringUtils.replace( originalProjectName, "pom.xml", "*" + LOG_SUFFIX );
+            List<File> logs = list( workspace, logsPattern );
+            LOGGER.debug( "found files {} for pattern: {} and workspace: {}", logs, logsPattern, workspace );
+            return logs;
+        }
+        // a custom pom, like it-pom.xml, has logs starting the same, like it-build.log
+        String prefix = StringUtils.removeEnd( name, "pom.xml" );
+        List<File> logs = new ArrayList<>();
+        for ( File log : logsByDirectory( workspace ).getOrDefault( directory, Collections.emptyList() ) )
+        {
+            String logName = log.getName();
+            if ( logName.startsWith( prefix ) && logName.length() >= prefix.length() + LOG_SUFFIX.length() )
+            {
+                logs.add( log );
+            }
+        }
+        LOGGER.debug( "found files {} for project: {} and workspace: {}", logs, originalProjectName, workspace );
+        return logs;
+    }
+
+    private synchronized Map<String, List<File>> logsByDirectory( File workspace )
+        throws IOException
+    {
+        if ( logsByDirectory == null )
+        {
+            logsByDirectory = indexLogs( new File( workspace, invokerBuildDir ) );
+        }
+        return logsByDirectory;
+    }
+
+    /**
+     * Walks a directory once for the build logs of all the ITs.
+     *
+     * @return the logs sorted by name, by directory relative to <code>root</code> with forward slashes
+     */
+    static Map<String, List<File>> indexLogs( File root )
+        throws IOException
+    {
+        Map<String, List<File>> logs = new HashMap<>();
+        if ( !root.isDirectory() )
+        {
+            return logs;
+        }
+        Path rootPath = root.toPath();
+        Files.walkFileTree( rootPath, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), Integer.MAX_VALUE,
+                            new SimpleFileVisitor<Path>()
+                            {
+                                @Override
+                                public FileVisitResult visitFile( Path file, BasicFileAttributes attributes )
+                                {
+                                    if ( attributes.isRegularFile() //
+                                        && file.getFileName().toString().endsWith( LOG_SUFFIX ) )
+                                    {
+                                        String directory = rootPath.relativize( file.getParent() ).toString() //
+                                            .replace( File.separatorChar, '/' );
+                                        logs.computeIfAbsent( directory, d -> new ArrayList<>() ) //
+                                            .add( file.toFile() );
+                                    }
+                                    return FileVisitResult.CONTINUE;
+                                }
+
+                                @Override
+                                public FileVisitResult visitFileFailed( Path file, IOException e )
+                                {
+                                    // unreadable or a symbolic link loop
+                                    LOGGER.debug( "cannot visit {}", file, e );
+                                    return FileVisitResult.CONTINUE;
+                                }
+                            } );
+        for ( List<File> directoryLogs : logs.values() )
+        {
+            directoryLogs.sort( Comparator.comparing( File::getName ) );
+        }
+        return logs;
+    }
+
+    /**
+     * Lists the reports in a single scan: the parts of the pattern naming a directory stand for the
+     * <code>BUILD*.xml</code> reports below it, the others are ant patterns.
+     */
+    static List<File> locateReports( File workspace, String filenamePattern )
+    {
+        List<String> includes = new ArrayList<>();
+        for ( String part : StringUtils.defaultString( filenamePattern ).split( "\\s*[;:,]+\\s*" ) )
+        {
+            String path = part.trim();
+            if ( path.isEmpty() )
+            {
+                continue;
+            }
+            includes.add( new File( workspace, path ).isDirectory() ? StringUtils.removeEnd( path, "/" )
+                + "/**/BUILD*.xml" : path );
+        }
+        return includes.isEmpty() ? new ArrayList<>() : list( workspace, StringUtils.join( includes, ',' ) );
+    }
+
+    private static List<File> list( File baseDir, String includes )
+    {
+        if ( !baseDir.isDirectory() )
+        {
+            return new ArrayList<>();
+        }
+        try
+        {
+            String[] names = Util.createFileSet( baseDir, includes ).getDirectoryScanner().getIncludedFiles();
+            Arrays.sort( names );
+            List<File> files = new ArrayList<>( names.length );
+            for ( String name : names )
+            {
+                files.add( new File( baseDir, name ) );
+            }
+            return files;
+        }
+        catch ( BuildException e )
+        {
+            LOGGER.debug( "cannot list {} in {}", includes, baseDir, e );
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Compresses a single log with the {@link #logCodec} to a temporary file, so no log is ever held in memory
+     * whatever its size. A log longer than <code>kept</code> bytes only keeps its head and its longer tail, where
+     * the failures are, around a line telling how much was left out.
+     *
+     * @param crc updated with the compressed bytes, to store them as is in the stream
+     */
+    private File compressLog( File log, long kept, CRC32 crc )
+        throws IOException
+    {
+        File zip = Files.createTempFile( "maven-invoker-log", logCodec.getSuffix() ).toFile();
+        spilledLogs.add( zip );
+        OutputStream file =
+            new CheckedOutputStream( new BufferedOutputStream( Files.newOutputStream( zip.toPath() ) ), crc );
+        try (OutputStream compressed = logCodec.compress( file, log.getName(), compressionLevel, dictionary ))
+        {
+            copyKept( log, kept, compressed );
+        }
+        return zip;
+    }
+
+    private static void copyKept( File log, long kept, OutputStream out )
+        throws IOException
+    {
+        long length = log.length();
+        if ( kept >= length )
+        {
+            Files.copy( log.toPath(), out );
+            return;
+        }
+        long head = kept / 4;
+        long tail = kept - head;
+        try (InputStream in = Files.newInputStream( log.toPath() ))
+        {
+            LogStreams.copyRange( in, out, 0, head );
+            out.write( ( "\n[... " + ( length - kept ) + " bytes not archived ...]\n" ) //
+                           .getBytes( StandardCharsets.UTF_8 ) );
+            // the stream is already past the head
+            LogStreams.copyRange( in, out, length - tail - head, tail );
+        }
+    }
+
+    /**
+     * Trains the dictionary on the head of the logs of the first reports, the part of a log repeated the most
+     * from one IT to the other.
+     */
+    private byte[] trainDictionary( File workspace, List<File> reports )
+    {
+        List<byte[]> samples = new ArrayList<>();
+        for ( File report : reports.subList( 0, Math.min( reports.size(), DICTIONARY_REPORTS ) ) )
+        {
+            try (InputStream in = Files.newInputStream( report.toPath() ))
+            {
+                String project = new BuildJobXpp3Reader().read( in ).getProject();
+                for ( File log : locateLogs( workspace, project ) )
+                {
+                    try (InputStream logStream = Files.newInputStream( log.toPath() ))
+                    {
+                        ByteArrayOutputStream sample = new ByteArrayOutputStream();
+                        LogStreams.copyRange( logStream, sample, 0, DICTIONARY_SAMPLE_BYTES );
+                        samples.add( sample.toByteArray() );
+                    }
+                }
+            }
+            catch ( IOException | XmlPullParserException e )
+            {
+                // reported when collected
+                LOGGER.debug( "cannot sample the logs of {}", report, e );
+            }
+        }
+        return LogDictionary.train( samples );
+    }
+
+    /**
+     * Already compressed data is stored as is in the stream.
+     */
+    private static void putStored( ZipOutputStream zip, String name, File content, long crc )
+        throws IOException
+    {
+        ZipEntry entry = new ZipEntry( name );
+        entry.setMethod( ZipEntry.STORED );
+        entry.setSize( content.length() );
+        entry.setCompressedSize( content.length() );
+        entry.setCrc( crc );
+        zip.putNextEntry( entry );
+        Files.copy( content.toPath(), zip );
+        zip.closeEntry();
+    }
+
+    static InvokerResult map( BuildJob buildJob, String pipelinePath )
+    {
+        InvokerResult invokerResult = new InvokerResult();
+
+        invokerResult.description = buildJob.getDescription();
+        invokerResult.failureMessage = buildJob.getFailureMessage();
+        invokerResult.name = pipelinePath == null ? buildJob.getName() : pipelinePath + "/" + buildJob.getName();
+        invokerResult.project =
+            pipelinePath == null ? buildJob.getProject() : pipelinePath + "/" + buildJob.getProject();
+        invokerResult.result = InvokerResult.canonicalResult( buildJob.getResult() );
+        invokerResult.time = buildJob.getTime();
+        // transform the current buildJob as well
+        if ( pipelinePath != null )
+        {
+            buildJob.setName( pipelinePath + "/" + buildJob.getName() );
+            buildJob.setProject( pipelinePath + "/" + buildJob.getProject() );
+        }
+        // the log filename is derived from the project
+
+        return invokerResult;
+    }
+
+    /**
+     * A report parsed and compressed, waiting to be written to the stream.
+     */
+    private static final class CollectedReport
+    {
+        final InvokerResult invokerResult;
+
+        String storageName;
+
+        final String path;
+
+        byte[] xml;
+
+        /**
+         * Name of the blob of the report, <code>null</code> if not deduplicated.
+         */
+        String xmlBlob;
+
+        /**
+         * Blobs of the report and its logs, and of the other reports of its chunk, already stored by the job,
+         * empty if not deduplicated.
+         */
+        Set<String> storedBlobs = Collections.emptySet();
+
+        /**
+         * Names of the blobs of the logs to archive, empty if not deduplicated.
+         */
+        final Map<File, String> logBlobs = new HashMap<>();
+
+        List<File> logFiles = Collections.emptyList();
+
+        /**
+         * See {@link #logLimit(InvokerResult)}.
+         */
+        long logLimit;
+
+        final Map<String, CollectedLog> logs = new LinkedHashMap<>();
+
+        CollectedReport( InvokerResult invokerResult, String storageName, String path )
+        {
+            this.path = path;
+            this.invokerResult = invokerResult;
+            this.storageName = storageName;
+        }
+    }
+
+    /**
+     * A log compressed, or only accounted for when not archived.
+     */
+    private static final class CollectedLog
+    {
+        /**
+         * Temporary file of the compressed log, <code>null</code> if the log is not archived or already stored as
+         * {@link #blob}.
+         */
+        final File zip;
+
+        final long crc;
+
+        /**
+         * Name of the blob of the log, <code>null</code> if not deduplicated.
+         */
+        final String blob;
+
+        final long length;
+
+        /**
+         * Bytes of the log left out when truncated.
+         */
+        final long skipped;
+
+        CollectedLog( File zip, long crc, String blob, long length, long skipped )
+        {
+            this.zip = zip;
+            this.crc = crc;
+            this.blob = blob;
+            this.length = length;
+            this.skipped = skipped;
+        }
+    }
+}
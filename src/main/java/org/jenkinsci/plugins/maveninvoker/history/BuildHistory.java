@@ -0,0 +1,337 @@
+package org.jenkinsci.plugins.maveninvoker.history;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per job history of the {@link BuildSummary} of each build, appended at record time and kept in memory,
+ * so drawing a trend never loads the builds.
+ */
+public class BuildHistory
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger( BuildHistory.class );
+
+    public static final String FILE_NAME = "maven-invoker-history";
+
+    private static final int MAGIC = 0x4D494248;
+
+    private static final byte RECORD = 1;
+
+    private static final byte DELETED = 2;
+
+    private static final Map<String, BuildHistory> HISTORIES = new ConcurrentHashMap<>();
+
+    private final File file;
+
+    /**
+     * Guarded by this.
+     */
+    private final NavigableMap<Integer, BuildSummary> summaries = new TreeMap<>();
+
+    /**
+     * Number of records in the file, to know when compacting it is worth it. Guarded by this.
+     */
+    private int records;
+
+    private BuildHistory( File file )
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return the history of a job, <code>null</code> if nothing has been recorded for it
+     */
+    @CheckForNull
+    public static BuildHistory get( Job<?, ?> job )
+    {
+        File file = new File( job.getRootDir(), FILE_NAME );
+        BuildHistory history = HISTORIES.get( file.getPath() );
+        if ( history == null && file.isFile() )
+        {
+            history = forJob( job );
+        }
+        return history;
+    }
+
+    /**
+     * @return the history of a job, created if needed
+     */
+    public static BuildHistory forJob( Job<?, ?> job )
+    {
+        File file = new File( job.getRootDir(), FILE_NAME );
+        return HISTORIES.computeIfAbsent( file.getPath(), path -> load( file ) );
+    }
+
+    static BuildHistory load( File file )
+    {
+        BuildHistory history = new BuildHistory( file );
+        history.load();
+        return history;
+    }
+
+    private synchronized void load()
+    {
+        if ( !file.isFile() )
+        {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ))
+        {
+            if ( in.readInt() != MAGIC )
+            {
+                LOGGER.warn( "ignore invalid history {}", file );
+                return;
+            }
+            int type;
+            while ( ( type = in.read() ) != -1 )
+            {
+                int number = in.readInt();
+                if ( type == DELETED )
+                {
+                    summaries.remove( number );
+                }
+                else
+                {
+                    int passed = in.readInt();
+                    int failed = in.readInt();
+                    int skipped = in.readInt();
+                    double time = in.readDouble();
+                    summaries.computeIfAbsent( number, BuildSummary::new ).add( passed, failed, skipped, time );
+                }
+                records++;
+            }
+        }
+        catch ( EOFException e )
+        {
+            LOGGER.warn( "truncated history {}", file );
+        }
+        catch ( IOException e )
+        {
+            LOGGER.warn( "cannot read history {}", file, e );
+        }
+    }
+
+    /**
+     * Adds the summary of a recording, a build may have several recordings.
+     */
+    public synchronized void append( BuildSummary summary )
+        throws IOException
+    {
+        summaries.computeIfAbsent( summary.getNumber(), BuildSummary::new ) //
+            .add( summary.getPassed(), summary.getFailed(), summary.getSkipped(), summary.getTime() );
+        // live or parallel recordings add several records per build
+        if ( records > 2 * summaries.size() + 16 )
+        {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = openForAppend())
+        {
+            write( out, summary );
+        }
+        records++;
+    }
+
+    public synchronized void remove( int number )
+        throws IOException
+    {
+        if ( summaries.remove( number ) == null )
+        {
+            return;
+        }
+        if ( records > 2 * summaries.size() + 16 )
+        {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = openForAppend())
+        {
+            out.writeByte( DELETED );
+            out.writeInt( number );
+        }
+        records++;
+    }
+
+    /**
+     * @return the summaries of at most <code>max</code> builds, the most recent first
+     */
+    public synchronized List<BuildSummary> getSummaries( int max )
+    {
+        List<BuildSummary> list = new ArrayList<>( Math.min( max, summaries.size() ) );
+        for ( BuildSummary summary : summaries.descendingMap().values() )
+        {
+            if ( list.size() >= max )
+            {
+                break;
+            }
+            list.add( summary );
+        }
+        return list;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return summaries.isEmpty();
+    }
+
+    private DataOutputStream openForAppend()
+        throws IOException
+    {
+        boolean created = !file.exists() || file.length() == 0;
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file, true ) ) );
+        if ( created )
+        {
+            out.writeInt( MAGIC );
+        }
+        return out;
+    }
+
+    private void compact()
+        throws IOException
+    {
+        File tmp = new File( file.getPath() + ".tmp" );
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) ))
+        {
+            out.writeInt( MAGIC );
+            for ( BuildSummary summary : summaries.values() )
+            {
+                write( out, summary );
+            }
+        }
+        Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        records = summaries.size();
+    }
+
+    private static void write( DataOutputStream out, BuildSummary summary )
+        throws IOException
+    {
+        out.writeByte( RECORD );
+        out.writeInt( summary.getNumber() );
+        out.writeInt( summary.getPassed() );
+        out.writeInt( summary.getFailed() );
+        out.writeInt( summary.getSkipped() );
+        out.writeDouble( summary.getTime() );
+    }
+
+    /**
+     * Removes deleted builds from the history, their times from the {@link DurationHistory} and their outcomes from
+     * the {@link OutcomeHistory}.
+     */
+    @Extension
+    public static final class RunListenerImpl
+        extends RunListener<Run<?, ?>>
+    {
+        @Override
+        public void onDeleted( Run<?, ?> run )
+        {
+            BuildHistory history = get( run.getParent() );
+            if ( history != null )
+            {
+                try
+                {
+                    history.remove( run.getNumber() );
+                }
+                catch ( IOException e )
+                {
+                    LOGGER.warn( "cannot remove {} from the history", run, e );
+                }
+            }
+            DurationHistory durations = DurationHistory.get( run.getParent() );
+            if ( durations != null )
+            {
+                try
+                {
+                    durations.remove( run.getNumber() );
+                }
+                catch ( IOException e )
+                {
+                    LOGGER.warn( "cannot remove the times of {}", run, e );
+                }
+            }
+            OutcomeHistory outcomes = OutcomeHistory.get( run.getParent() );
+            if ( outcomes != null )
+            {
+                try
+                {
+                    outcomes.remove( run.getNumber() );
+                }
+                catch ( IOException e )
+                {
+                    LOGGER.warn( "cannot remove the outcomes of {}", run, e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the histories of deleted or moved jobs, they are read again from their new location.
+     */
+    @Extension
+    public static final class ItemListenerImpl
+        extends ItemListener
+    {
+        @Override
+        public void onDeleted( Item item )
+        {
+            if ( item instanceof Job )
+            {
+                HISTORIES.remove( new File( item.getRootDir(), FILE_NAME ).getPath() );
+                OutcomeHistory.forget( item.getRootDir() );
+                DurationHistory.forget( item.getRootDir() );
+            }
+        }
+
+        @Override
+        public void onLocationChanged( Item item, String oldFullName, String newFullName )
+        {
+            // the previous location is unknown, histories are cheap to read again
+            HISTORIES.clear();
+            OutcomeHistory.forgetAll();
+            DurationHistory.forgetAll();
+        }
+    }
+}
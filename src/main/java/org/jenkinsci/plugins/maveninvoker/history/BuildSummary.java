@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.maveninvoker.history;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+
+import java.util.Collection;
+
+/**
+ * Counts and total time of the ITs recorded in one build.
+ */
+public class BuildSummary
+{
+    private final int number;
+
+    private int passed;
+
+    private int failed;
+
+    private int skipped;
+
+    private double time;
+
+    public BuildSummary( int number )
+    {
+        this.number = number;
+    }
+
+    public static BuildSummary of( int number, Collection<InvokerResult> invokerResults )
+    {
+        BuildSummary summary = new BuildSummary( number );
+        for ( InvokerResult invokerResult : invokerResults )
+        {
+            if ( StringUtils.equals( invokerResult.result, BuildJob.Result.SUCCESS ) )
+            {
+                summary.passed++;
+            }
+            else if ( StringUtils.equals( invokerResult.result, BuildJob.Result.SKIPPED ) )
+            {
+                summary.skipped++;
+            }
+            else
+            {
+                summary.failed++;
+            }
+            summary.time += invokerResult.time;
+        }
+        return summary;
+    }
+
+    void add( int passed, int failed, int skipped, double time )
+    {
+        this.passed += passed;
+        this.failed += failed;
+        this.skipped += skipped;
+        this.time += time;
+    }
+
+    public int getNumber()
+    {
+        return number;
+    }
+
+    public int getPassed()
+    {
+        return passed;
+    }
+
+    public int getFailed()
+    {
+        return failed;
+    }
+
+    public int getSkipped()
+    {
+        return skipped;
+    }
+
+    public int getTotal()
+    {
+        return passed + failed + skipped;
+    }
+
+    /**
+     * @return the sum of the time of all the ITs, in seconds
+     */
+    public double getTime()
+    {
+        return time;
+    }
+}
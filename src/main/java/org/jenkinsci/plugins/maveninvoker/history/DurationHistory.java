@@ -0,0 +1,539 @@
+package org.jenkinsci.plugins.maveninvoker.history;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Job;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per job history of the last times of each passed IT, to tell the ITs taking much longer than usual. Only a window
+ * of times is kept per IT, so a baseline is computed from a few values whatever the age of the job. The ITs are keyed
+ * by {@link InvokerResult#project} without the enclosing blocks of the pipeline, so an IT run by another parallel
+ * branch from build to build, as sharded ITs are, keeps a single window. A record with a negative build number
+ * removes the times of a deleted build.
+ */
+public class DurationHistory
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger( DurationHistory.class );
+
+    public static final String FILE_NAME = "maven-invoker-durations";
+
+    /**
+     * Number of recorded times of an IT its baseline is computed on.
+     */
+    public static final int WINDOW = Math.max( 2, Math.min( 1000, SystemProperties.getInteger(
+        DurationHistory.class.getName() + ".window", 20 ) ) );
+
+    /**
+     * Seconds an IT has to take above its median to be slower, so short ITs are not reported for a little noise.
+     */
+    public static final double MIN_REGRESSION_SECONDS = Double.parseDouble( SystemProperties.getString(
+        DurationHistory.class.getName() + ".minRegressionSeconds", "1" ) );
+
+    /**
+     * An IT has no baseline before this number of times.
+     */
+    private static final int MIN_SAMPLES = 5;
+
+    private static final int MAGIC = 0x4D494448;
+
+    private static final Map<String, DurationHistory> HISTORIES = new ConcurrentHashMap<>();
+
+    private final File file;
+
+    /**
+     * Guarded by this.
+     */
+    private final Map<String, Durations> durations = new HashMap<>();
+
+    /**
+     * Number of records in the file, to know when compacting it is worth it. Guarded by this.
+     */
+    private int records;
+
+    private DurationHistory( File file )
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return the history of a job, <code>null</code> if nothing has been recorded for it
+     */
+    @CheckForNull
+    public static DurationHistory get( Job<?, ?> job )
+    {
+        File file = new File( job.getRootDir(), FILE_NAME );
+        DurationHistory history = HISTORIES.get( file.getPath() );
+        if ( history == null && file.isFile() )
+        {
+            history = forJob( job );
+        }
+        return history;
+    }
+
+    /**
+     * @return the history of a job, created if needed
+     */
+    public static DurationHistory forJob( Job<?, ?> job )
+    {
+        File file = new File( job.getRootDir(), FILE_NAME );
+        return HISTORIES.computeIfAbsent( file.getPath(), path -> load( file ) );
+    }
+
+    static DurationHistory load( File file )
+    {
+        DurationHistory history = new DurationHistory( file );
+        history.load();
+        return history;
+    }
+
+    static void forget( File jobDirectory )
+    {
+        HISTORIES.remove( new File( jobDirectory, FILE_NAME ).getPath() );
+    }
+
+    static void forgetAll()
+    {
+        HISTORIES.clear();
+    }
+
+    private synchronized void load()
+    {
+        if ( !file.isFile() )
+        {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ))
+        {
+            if ( in.readInt() != MAGIC )
+            {
+                LOGGER.warn( "ignore invalid history {}", file );
+                return;
+            }
+            while ( true )
+            {
+                int number;
+                try
+                {
+                    number = in.readInt();
+                }
+                catch ( EOFException e )
+                {
+                    break;
+                }
+                double time = in.readDouble();
+                String project = in.readUTF();
+                if ( number < 0 )
+                {
+                    removeTimes( -number );
+                }
+                else
+                {
+                    durations.computeIfAbsent( project, p -> new Durations() ).add( number, time );
+                }
+                records++;
+            }
+        }
+        catch ( EOFException e )
+        {
+            LOGGER.warn( "truncated history {}", file );
+        }
+        catch ( IOException e )
+        {
+            LOGGER.warn( "cannot read history {}", file, e );
+        }
+    }
+
+    public void append( int number, Collection<InvokerResult> invokerResults )
+        throws IOException
+    {
+        append( number, invokerResults, null );
+    }
+
+    /**
+     * Adds the times of the passed ITs of a recording of a build. An IT recorded several times in a build keeps
+     * its longest time.
+     *
+     * @param projectPrefix enclosing blocks of the pipeline prepended to the projects, <code>null</code> if none
+     */
+    public synchronized void append( int number, Collection<InvokerResult> invokerResults,
+                                     @CheckForNull String projectPrefix )
+        throws IOException
+    {
+        Map<String, Double> recorded = new LinkedHashMap<>();
+        for ( InvokerResult invokerResult : invokerResults )
+        {
+            if ( invokerResult.project != null
+                && StringUtils.equals( invokerResult.result, BuildJob.Result.SUCCESS ) )
+            {
+                recorded.merge( project( invokerResult, projectPrefix ), invokerResult.time, Math::max );
+            }
+        }
+        if ( recorded.isEmpty() )
+        {
+            return;
+        }
+        for ( Map.Entry<String, Double> entry : recorded.entrySet() )
+        {
+            durations.computeIfAbsent( entry.getKey(), p -> new Durations() ).add( number, entry.getValue() );
+        }
+        if ( records > 2 * WINDOW * durations.size() + 1024 )
+        {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = openForAppend())
+        {
+            for ( Map.Entry<String, Double> entry : recorded.entrySet() )
+            {
+                write( out, number, entry.getKey(), entry.getValue() );
+            }
+        }
+        records += recorded.size();
+    }
+
+    /**
+     * Removes the times of a deleted build, so they no longer count in the baselines.
+     */
+    public synchronized void remove( int number )
+        throws IOException
+    {
+        if ( !removeTimes( number ) )
+        {
+            return;
+        }
+        if ( records > 2 * WINDOW * durations.size() + 1024 )
+        {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = openForAppend())
+        {
+            write( out, -number, "", 0 );
+        }
+        records++;
+    }
+
+    /**
+     * @return <code>true</code> if the build had times
+     */
+    private boolean removeTimes( int number )
+    {
+        boolean removed = false;
+        for ( Iterator<Durations> iterator = durations.values().iterator(); iterator.hasNext(); )
+        {
+            Durations it = iterator.next();
+            if ( it.remove( number ) )
+            {
+                removed = true;
+                if ( it.count == 0 )
+                {
+                    iterator.remove();
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the baseline of an IT over its last {@link #WINDOW} times, <code>null</code> until enough times
+     * have been recorded
+     */
+    @CheckForNull
+    public synchronized Baseline getBaseline( String project )
+    {
+        return getBaseline( project, Integer.MAX_VALUE );
+    }
+
+    /**
+     * @return the baseline of an IT over its times recorded by the builds before <code>number</code>
+     */
+    @CheckForNull
+    public synchronized Baseline getBaseline( String project, int number )
+    {
+        Durations it = durations.get( project );
+        return it == null ? null : it.baseline( number );
+    }
+
+    /**
+     * @return the ITs having at least one recorded time
+     */
+    public synchronized Set<String> getProjects()
+    {
+        return new HashSet<>( durations.keySet() );
+    }
+
+    public int markRegressions( int number, Collection<InvokerResult> invokerResults, double factor )
+    {
+        return markRegressions( number, invokerResults, factor, null );
+    }
+
+    /**
+     * Sets the {@link InvokerResult#baselineTime} of the results of a build taking more than <code>factor</code>
+     * times the median of their IT, and {@link #MIN_REGRESSION_SECONDS} more, over the previous builds.
+     *
+     * @param projectPrefix enclosing blocks of the pipeline prepended to the projects, <code>null</code> if none
+     * @return the number of slower results
+     */
+    public synchronized int markRegressions( int number, Collection<InvokerResult> invokerResults, double factor,
+                                             @CheckForNull String projectPrefix )
+    {
+        int regressions = 0;
+        for ( InvokerResult invokerResult : invokerResults )
+        {
+            if ( invokerResult.project == null
+                || StringUtils.equals( invokerResult.result, BuildJob.Result.SKIPPED ) )
+            {
+                continue;
+            }
+            Baseline baseline = getBaseline( project( invokerResult, projectPrefix ), number );
+            if ( baseline != null && baseline.isRegression( invokerResult.time, factor ) )
+            {
+                invokerResult.baselineTime = baseline.getMedian();
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    private DataOutputStream openForAppend()
+        throws IOException
+    {
+        boolean created = !file.exists() || file.length() == 0;
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file, true ) ) );
+        if ( created )
+        {
+            out.writeInt( MAGIC );
+        }
+        return out;
+    }
+
+    private static String project( InvokerResult invokerResult, @CheckForNull String projectPrefix )
+    {
+        return projectPrefix == null ? invokerResult.project
+            : StringUtils.removeStart( invokerResult.project, projectPrefix );
+    }
+
+    /**
+     * Rewrites the window of each IT.
+     */
+    private void compact()
+        throws IOException
+    {
+        File tmp = new File( file.getPath() + ".tmp" );
+        int written = 0;
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) ))
+        {
+            out.writeInt( MAGIC );
+            for ( Map.Entry<String, Durations> entry : durations.entrySet() )
+            {
+                Durations it = entry.getValue();
+                for ( int i = it.count - 1; i >= 0; i-- )
+                {
+                    int index = Math.floorMod( it.next - 1 - i, WINDOW );
+                    write( out, it.numbers[index], entry.getKey(), it.times[index] );
+                    written++;
+                }
+            }
+        }
+        Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        records = written;
+    }
+
+    private static void write( DataOutputStream out, int number, String project, double time )
+        throws IOException
+    {
+        out.writeInt( number );
+        out.writeDouble( time );
+        out.writeUTF( project );
+    }
+
+    /**
+     * Usual time of an IT.
+     */
+    public static final class Baseline
+    {
+        private final double median;
+
+        private final double p90;
+
+        private final int samples;
+
+        Baseline( double median, double p90, int samples )
+        {
+            this.median = median;
+            this.p90 = p90;
+            this.samples = samples;
+        }
+
+        /**
+         * @return the median time in seconds
+         */
+        public double getMedian()
+        {
+            return median;
+        }
+
+        /**
+         * @return the time in seconds 90% of the times are below
+         */
+        public double getP90()
+        {
+            return p90;
+        }
+
+        public int getSamples()
+        {
+            return samples;
+        }
+
+        /**
+         * @return <code>true</code> if a time is more than <code>factor</code> times the median, and
+         * {@link #MIN_REGRESSION_SECONDS} more
+         */
+        public boolean isRegression( double time, double factor )
+        {
+            return time > factor * median && time - median >= MIN_REGRESSION_SECONDS;
+        }
+    }
+
+    /**
+     * Last times of an IT in a ring, with the numbers of their builds.
+     */
+    private static final class Durations
+    {
+        final double[] times = new double[WINDOW];
+
+        final int[] numbers = new int[WINDOW];
+
+        /**
+         * Index of the next time.
+         */
+        int next;
+
+        int count;
+
+        void add( int number, double time )
+        {
+            int index = indexOf( number );
+            if ( index >= 0 )
+            {
+                // another recording of the same build, possibly after recordings of other builds
+                times[index] = Math.max( times[index], time );
+                return;
+            }
+            times[next] = time;
+            numbers[next] = number;
+            next = ( next + 1 ) % WINDOW;
+            count = Math.min( count + 1, WINDOW );
+        }
+
+        /**
+         * @return <code>true</code> if the build had a time, the later times are moved back over it
+         */
+        boolean remove( int number )
+        {
+            int index = indexOf( number );
+            if ( index < 0 )
+            {
+                return false;
+            }
+            int last = Math.floorMod( next - 1, WINDOW );
+            for ( int i = index; i != last; i = ( i + 1 ) % WINDOW )
+            {
+                int following = ( i + 1 ) % WINDOW;
+                times[i] = times[following];
+                numbers[i] = numbers[following];
+            }
+            next = last;
+            count--;
+            return true;
+        }
+
+        /**
+         * @return the index of the time of a build, <code>-1</code> if it has none
+         */
+        private int indexOf( int number )
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                int index = Math.floorMod( next - 1 - i, WINDOW );
+                if ( numbers[index] == number )
+                {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        Baseline baseline( int before )
+        {
+            double[] sorted = new double[count];
+            int samples = 0;
+            for ( int i = 0; i < count; i++ )
+            {
+                int index = Math.floorMod( next - 1 - i, WINDOW );
+                if ( numbers[index] < before )
+                {
+                    sorted[samples++] = times[index];
+                }
+            }
+            if ( samples < MIN_SAMPLES )
+            {
+                return null;
+            }
+            sorted = Arrays.copyOf( sorted, samples );
+            Arrays.sort( sorted );
+            double median = samples % 2 == 1 ? sorted[samples / 2]
+                : ( sorted[samples / 2 - 1] + sorted[samples / 2] ) / 2;
+            // nearest rank
+            double p90 = sorted[(int) Math.ceil( 0.9 * samples ) - 1];
+            return new Baseline( median, p90, samples );
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package org.jenkinsci.plugins.maveninvoker.history;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Job;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per job history of the last outcomes of each IT, keyed by {@link InvokerResult#project}. The outcomes of an IT
+ * are the bits of a <code>long</code> next to the numbers of their builds, so the flip rate of thousands of ITs is
+ * computed from a few hundred kilobytes and the outcomes of a deleted build are removed.
+ */
+public class OutcomeHistory
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger( OutcomeHistory.class );
+
+    public static final String FILE_NAME = "maven-invoker-outcomes";
+
+    /**
+     * Number of recorded outcomes of an IT the flip rate is computed on, at most 64.
+     */
+    public static final int WINDOW = Math.max( 2, Math.min( 64, SystemProperties.getInteger(
+        OutcomeHistory.class.getName() + ".window", 20 ) ) );
+
+    /**
+     * Flip rate from which an IT is flaky.
+     */
+    public static final double FLAKY_FLIP_RATE = Double.parseDouble( SystemProperties.getString(
+        OutcomeHistory.class.getName() + ".flakyFlipRate", "0.2" ) );
+
+    /**
+     * An IT is not flaky before this number of outcomes or flips.
+     */
+    private static final int MIN_OUTCOMES = 5;
+
+    private static final int MIN_FLIPS = 2;
+
+    private static final int MAGIC = 0x4D494F48;
+
+    /**
+     * Type of the record of a deleted build, the others hold whether an IT failed.
+     */
+    private static final int DELETED = 2;
+
+    private static final Map<String, OutcomeHistory> HISTORIES = new ConcurrentHashMap<>();
+
+    private final File file;
+
+    /**
+     * Guarded by this.
+     */
+    private final Map<String, Outcomes> outcomes = new HashMap<>();
+
+    /**
+     * Number of records in the file, to know when compacting it is worth it. Guarded by this.
+     */
+    private int records;
+
+    private OutcomeHistory( File file )
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return the history of a job, <code>null</code> if nothing has been recorded for it
+     */
+    @CheckForNull
+    public static OutcomeHistory get( Job<?, ?> job )
+    {
+        File file = new File( job.getRootDir(), FILE_NAME );
+        OutcomeHistory history = HISTORIES.get( file.getPath() );
+        if ( history == null && file.isFile() )
+        {
+            history = forJob( job );
+        }
+        return history;
+    }
+
+    /**
+     * @return the history of a job, created if needed
+     */
+    public static OutcomeHistory forJob( Job<?, ?> job )
+    {
+        File file = new File( job.getRootDir(), FILE_NAME );
+        return HISTORIES.computeIfAbsent( file.getPath(), path -> load( file ) );
+    }
+
+    static OutcomeHistory load( File file )
+    {
+        OutcomeHistory history = new OutcomeHistory( file );
+        history.load();
+        return history;
+    }
+
+    static void forget( File jobDirectory )
+    {
+        HISTORIES.remove( new File( jobDirectory, FILE_NAME ).getPath() );
+    }
+
+    static void forgetAll()
+    {
+        HISTORIES.clear();
+    }
+
+    private synchronized void load()
+    {
+        if ( !file.isFile() )
+        {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ))
+        {
+            if ( in.readInt() != MAGIC )
+            {
+                LOGGER.warn( "ignore invalid history {}", file );
+                return;
+            }
+            int failed;
+            while ( ( failed = in.read() ) != -1 )
+            {
+                int number = in.readInt();
+                String project = in.readUTF();
+                if ( failed == DELETED )
+                {
+                    removeOutcomes( number );
+                }
+                else
+                {
+                    outcomes.computeIfAbsent( project, p -> new Outcomes() ).add( number, failed != 0 );
+                }
+                records++;
+            }
+        }
+        catch ( EOFException e )
+        {
+            LOGGER.warn( "truncated history {}", file );
+        }
+        catch ( IOException e )
+        {
+            LOGGER.warn( "cannot read history {}", file, e );
+        }
+    }
+
+    /**
+     * Adds the outcomes of a recording of a build. Skipped ITs have no outcome, an IT recorded several times in
+     * a build has failed if any of its results failed.
+     */
+    public synchronized void append( int number, Collection<InvokerResult> invokerResults )
+        throws IOException
+    {
+        Map<String, Boolean> recorded = new LinkedHashMap<>();
+        for ( InvokerResult invokerResult : invokerResults )
+        {
+            if ( invokerResult.project == null //
+                || StringUtils.equals( invokerResult.result, BuildJob.Result.SKIPPED ) )
+            {
+                continue;
+            }
+            boolean failed = !StringUtils.equals( invokerResult.result, BuildJob.Result.SUCCESS );
+            recorded.merge( invokerResult.project, failed, Boolean::logicalOr );
+        }
+        if ( recorded.isEmpty() )
+        {
+            return;
+        }
+        for ( Map.Entry<String, Boolean> entry : recorded.entrySet() )
+        {
+            outcomes.computeIfAbsent( entry.getKey(), p -> new Outcomes() ).add( number, entry.getValue() );
+        }
+        if ( records > 2 * WINDOW * outcomes.size() + 1024 )
+        {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = openForAppend())
+        {
+            for ( Map.Entry<String, Boolean> entry : recorded.entrySet() )
+            {
+                write( out, number, entry.getKey(), entry.getValue() );
+            }
+        }
+        records += recorded.size();
+    }
+
+    /**
+     * Removes the outcomes of a deleted build, so they no longer count in the flip rates.
+     */
+    public synchronized void remove( int number )
+        throws IOException
+    {
+        if ( !removeOutcomes( number ) )
+        {
+            return;
+        }
+        if ( records > 2 * WINDOW * outcomes.size() + 1024 )
+        {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = openForAppend())
+        {
+            out.writeByte( DELETED );
+            out.writeInt( number );
+            out.writeUTF( "" );
+        }
+        records++;
+    }
+
+    /**
+     * @return <code>true</code> if the build had outcomes
+     */
+    private boolean removeOutcomes( int number )
+    {
+        boolean removed = false;
+        for ( Iterator<Outcomes> iterator = outcomes.values().iterator(); iterator.hasNext(); )
+        {
+            Outcomes it = iterator.next();
+            if ( it.remove( number ) )
+            {
+                removed = true;
+                if ( it.count == 0 )
+                {
+                    iterator.remove();
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the flip rate of an IT over its last {@link #WINDOW} outcomes, <code>0</code> when unknown
+     */
+    public synchronized double getFlipRate( String project )
+    {
+        Outcomes it = outcomes.get( project );
+        return it == null ? 0 : it.flipRate();
+    }
+
+    public synchronized boolean isFlaky( String project )
+    {
+        Outcomes it = outcomes.get( project );
+        return it != null && it.isFlaky();
+    }
+
+    private DataOutputStream openForAppend()
+        throws IOException
+    {
+        boolean created = !file.exists() || file.length() == 0;
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file, true ) ) );
+        if ( created )
+        {
+            out.writeInt( MAGIC );
+        }
+        return out;
+    }
+
+    /**
+     * Rewrites the window of each IT.
+     */
+    private void compact()
+        throws IOException
+    {
+        File tmp = new File( file.getPath() + ".tmp" );
+        int written = 0;
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) ))
+        {
+            out.writeInt( MAGIC );
+            for ( Map.Entry<String, Outcomes> entry : outcomes.entrySet() )
+            {
+                Outcomes it = entry.getValue();
+                for ( int i = it.count - 1; i >= 0; i-- )
+                {
+                    write( out, it.numbers[i], entry.getKey(), ( it.bits >>> i & 1 ) != 0 );
+                    written++;
+                }
+            }
+        }
+        Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        records = written;
+    }
+
+    private static void write( DataOutputStream out, int number, String project, boolean failed )
+        throws IOException
+    {
+        out.writeByte( failed ? 1 : 0 );
+        out.writeInt( number );
+        out.writeUTF( project );
+    }
+
+    /**
+     * Last {@link #WINDOW} outcomes of an IT, the most recent in the lowest bit, a set bit for a failure.
+     */
+    private static final class Outcomes
+    {
+        long bits;
+
+        int count;
+
+        /**
+         * Number of the build of each outcome, the most recent first.
+         */
+        final int[] numbers = new int[WINDOW];
+
+        void add( int number, boolean failed )
+        {
+            if ( count > 0 && number == numbers[0] )
+            {
+                // another recording of the same build
+                bits |= failed ? 1 : 0;
+                return;
+            }
+            bits = bits << 1 | ( failed ? 1 : 0 );
+            System.arraycopy( numbers, 0, numbers, 1, WINDOW - 1 );
+            numbers[0] = number;
+            count = Math.min( count + 1, WINDOW );
+        }
+
+        /**
+         * @return <code>true</code> if the build had an outcome
+         */
+        boolean remove( int number )
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                if ( numbers[i] == number )
+                {
+                    // the older outcomes move down to the removed bit
+                    long older = i == 63 ? 0 : bits >>> ( i + 1 ) << i;
+                    bits = older | bits & ( ( 1L << i ) - 1 );
+                    System.arraycopy( numbers, i + 1, numbers, i, count - i - 1 );
+                    count--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int flips()
+        {
+            int n = Math.min( count, WINDOW );
+            if ( n < 2 )
+            {
+                return 0;
+            }
+            // a set bit where two consecutive outcomes differ
+            long changes = ( bits ^ bits >>> 1 ) & ( ( 1L << ( n - 1 ) ) - 1 );
+            return Long.bitCount( changes );
+        }
+
+        double flipRate()
+        {
+            int n = Math.min( count, WINDOW );
+            return n < 2 ? 0 : (double) flips() / ( n - 1 );
+        }
+
+        boolean isFlaky()
+        {
+            return Math.min( count, WINDOW ) >= MIN_OUTCOMES && flips() >= MIN_FLIPS
+                && flipRate() >= FLAKY_FLIP_RATE;
+        }
+    }
+}
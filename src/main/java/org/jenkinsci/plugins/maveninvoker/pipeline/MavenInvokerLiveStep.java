@@ -0,0 +1,259 @@
+package org.jenkinsci.plugins.maveninvoker.pipeline;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.maveninvoker.LogPolicy;
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerRecorder;
+import org.jenkinsci.plugins.maveninvoker.storage.LogCodec;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Block step recording the invoker reports while its body runs, so the failures show up on the build before the
+ * whole suite is done. The reports left once the body is over are recorded as {@link MavenInvokerStep} does.
+ */
+public class MavenInvokerLiveStep
+    extends Step
+{
+
+    public static final int DEFAULT_POLL_INTERVAL = 15;
+
+    private String reportsFilenamePattern;
+
+    private String invokerBuildDir;
+
+    private int parallelism = 1;
+
+    private boolean rewriteReports;
+
+    private LogPolicy logPolicy = LogPolicy.ALL;
+
+    private long truncatedLogBytes = MavenInvokerRecorder.DEFAULT_TRUNCATED_LOG_BYTES;
+
+    private long maxLogBytes;
+
+    private long maxBuildLogBytes;
+
+    private LogCodec logCodec = LogCodec.ZIP;
+
+    private int compressionLevel;
+
+    private boolean deduplicate;
+
+    private double durationRegressionFactor;
+
+    private int pollInterval = DEFAULT_POLL_INTERVAL;
+
+    public MavenInvokerLiveStep()
+    {
+        this.reportsFilenamePattern = MavenInvokerRecorder.DEFAULT_REPORTS_FILENAME_PATTERN;
+        this.invokerBuildDir = MavenInvokerRecorder.DEFAULT_INVOKER_BUILD_DIR;
+    }
+
+    @DataBoundConstructor
+    public MavenInvokerLiveStep( String reportsFilenamePattern, String invokerBuildDir )
+    {
+        this.reportsFilenamePattern = reportsFilenamePattern == null ? //
+            MavenInvokerRecorder.DEFAULT_REPORTS_FILENAME_PATTERN : reportsFilenamePattern;
+        this.invokerBuildDir = invokerBuildDir == null ? //
+            MavenInvokerRecorder.DEFAULT_INVOKER_BUILD_DIR : invokerBuildDir;
+    }
+
+    @Override
+    public StepExecution start( StepContext stepContext )
+        throws Exception
+    {
+        return new MavenInvokerLiveStepExecution( stepContext, this );
+    }
+
+    public String getReportsFilenamePattern()
+    {
+        return reportsFilenamePattern;
+    }
+
+    public void setReportsFilenamePattern( String reportsFilenamePattern )
+    {
+        this.reportsFilenamePattern = reportsFilenamePattern;
+    }
+
+    public String getInvokerBuildDir()
+    {
+        return invokerBuildDir;
+    }
+
+    public void setInvokerBuildDir( String invokerBuildDir )
+    {
+        this.invokerBuildDir = invokerBuildDir;
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    @DataBoundSetter
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isRewriteReports()
+    {
+        return rewriteReports;
+    }
+
+    @DataBoundSetter
+    public void setRewriteReports( boolean rewriteReports )
+    {
+        this.rewriteReports = rewriteReports;
+    }
+
+    public LogPolicy getLogPolicy()
+    {
+        return logPolicy;
+    }
+
+    @DataBoundSetter
+    public void setLogPolicy( LogPolicy logPolicy )
+    {
+        this.logPolicy = logPolicy;
+    }
+
+    public long getTruncatedLogBytes()
+    {
+        return truncatedLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setTruncatedLogBytes( long truncatedLogBytes )
+    {
+        this.truncatedLogBytes = truncatedLogBytes;
+    }
+
+    public long getMaxLogBytes()
+    {
+        return maxLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxLogBytes( long maxLogBytes )
+    {
+        this.maxLogBytes = maxLogBytes;
+    }
+
+    public long getMaxBuildLogBytes()
+    {
+        return maxBuildLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxBuildLogBytes( long maxBuildLogBytes )
+    {
+        this.maxBuildLogBytes = maxBuildLogBytes;
+    }
+
+    public LogCodec getLogCodec()
+    {
+        return logCodec;
+    }
+
+    @DataBoundSetter
+    public void setLogCodec( LogCodec logCodec )
+    {
+        this.logCodec = logCodec;
+    }
+
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    @DataBoundSetter
+    public void setCompressionLevel( int compressionLevel )
+    {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public boolean isDeduplicate()
+    {
+        return deduplicate;
+    }
+
+    @DataBoundSetter
+    public void setDeduplicate( boolean deduplicate )
+    {
+        this.deduplicate = deduplicate;
+    }
+
+    public double getDurationRegressionFactor()
+    {
+        return durationRegressionFactor;
+    }
+
+    @DataBoundSetter
+    public void setDurationRegressionFactor( double durationRegressionFactor )
+    {
+        this.durationRegressionFactor = durationRegressionFactor;
+    }
+
+    /**
+     * @return seconds between two recordings of the new reports
+     */
+    public int getPollInterval()
+    {
+        return pollInterval;
+    }
+
+    @DataBoundSetter
+    public void setPollInterval( int pollInterval )
+    {
+        this.pollInterval = pollInterval <= 0 ? DEFAULT_POLL_INTERVAL : pollInterval;
+    }
+
+    @Extension
+    public static class DescriptorImpl
+        extends StepDescriptor
+    {
+        @Override
+        public String getFunctionName()
+        {
+            return "maven_invoker_live";
+        }
+
+        @Override
+        @NonNull
+        public String getDisplayName()
+        {
+            return "Archive Maven Invoker test results while they are written";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument()
+        {
+            return true;
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext()
+        {
+            Set<Class<?>> context = new HashSet<>();
+            Collections.addAll( context, Run.class, FilePath.class, FlowNode.class, TaskListener.class,
+                                Launcher.class );
+            return Collections.unmodifiableSet( context );
+        }
+
+    }
+}
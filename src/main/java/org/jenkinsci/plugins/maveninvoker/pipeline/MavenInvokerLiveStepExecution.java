@@ -0,0 +1,392 @@
+package org.jenkinsci.plugins.maveninvoker.pipeline;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.security.ImpersonatingScheduledExecutorService;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.maveninvoker.LogPolicy;
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerBuildAction;
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerRecorder;
+import org.jenkinsci.plugins.maveninvoker.PipelineDetails;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+import org.jenkinsci.plugins.maveninvoker.storage.LogCodec;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the body of {@link MavenInvokerLiveStep} while a {@link ReportsWatcher} on the agent collects the reports
+ * written to the reports directory. Every poll interval the reports written since the previous poll are recorded,
+ * then once the body is over the reports not recorded yet are recorded with a single scan of the workspace.
+ */
+public class MavenInvokerLiveStepExecution
+    extends StepExecution
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger( MavenInvokerLiveStepExecution.class );
+
+    /**
+     * Time a report must have been left untouched before being recorded, so it is not read while being written.
+     */
+    private static final long QUIET_MILLIS = TimeUnit.SECONDS.toMillis( 2 );
+
+    /**
+     * Shortest time after which a watcher not drained is stopped by the agent.
+     */
+    private static final long MIN_IDLE_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+
+    /**
+     * Threads running the recordings of all the live steps, which scan workspaces, transfer archives and write
+     * manifests: they are kept off the timer Jenkins runs its own periodic work with.
+     */
+    private static final int RECORDING_THREADS = Math.max( 1, SystemProperties.getInteger(
+        MavenInvokerLiveStepExecution.class.getName() + ".recordingThreads", 2 ) );
+
+    private static final ScheduledExecutorService RECORDINGS = recordings();
+
+    private final String reportsFilenamePattern;
+
+    private final String invokerBuildDir;
+
+    private final int parallelism;
+
+    private final boolean rewriteReports;
+
+    private final LogPolicy logPolicy;
+
+    private final long truncatedLogBytes;
+
+    private final long maxLogBytes;
+
+    private final long maxBuildLogBytes;
+
+    private final LogCodec logCodec;
+
+    private final int compressionLevel;
+
+    private final boolean deduplicate;
+
+    private final double durationRegressionFactor;
+
+    private final int pollInterval;
+
+    private final String watchId = UUID.randomUUID().toString();
+
+    /**
+     * Directory and file name pattern watched, <code>null</code> when the pattern cannot be watched.
+     */
+    private final String directory;
+
+    private final String namePattern;
+
+    /**
+     * Workspace relative paths of the reports already recorded. Guarded by this.
+     */
+    private final Set<String> recorded = new HashSet<>();
+
+    /**
+     * Results recorded by the polls, added to the histories of the job once the body is over so a build counts
+     * once whatever the number of polls. Guarded by this.
+     */
+    private final List<InvokerResult> historyResults = new ArrayList<>();
+
+    private transient volatile ScheduledFuture<?> poll;
+
+    /**
+     * Set once the step is stopped or its body is over, read by a poll without the lock a running poll holds.
+     */
+    private transient volatile boolean stopped;
+
+    public MavenInvokerLiveStepExecution( @NonNull StepContext context, MavenInvokerLiveStep step )
+    {
+        super( context );
+        this.reportsFilenamePattern = step.getReportsFilenamePattern();
+        this.invokerBuildDir = step.getInvokerBuildDir();
+        this.parallelism = step.getParallelism();
+        this.rewriteReports = step.isRewriteReports();
+        this.logPolicy = step.getLogPolicy();
+        this.truncatedLogBytes = step.getTruncatedLogBytes();
+        this.maxLogBytes = step.getMaxLogBytes();
+        this.maxBuildLogBytes = step.getMaxBuildLogBytes();
+        this.logCodec = step.getLogCodec();
+        this.compressionLevel = step.getCompressionLevel();
+        this.deduplicate = step.isDeduplicate();
+        this.durationRegressionFactor = step.getDurationRegressionFactor();
+        this.pollInterval = step.getPollInterval();
+        String pattern = StringUtils.trimToEmpty( reportsFilenamePattern ).replace( '\\', '/' );
+        int slash = pattern.lastIndexOf( '/' );
+        String parent = slash < 0 ? "" : pattern.substring( 0, slash );
+        String name = pattern.substring( slash + 1 );
+        // a single directory and a single file name pattern, anything else is only scanned at the end
+        boolean watchable = !name.isEmpty() && StringUtils.containsNone( pattern, ",;:" ) //
+            && StringUtils.containsNone( parent, "*?[{" );
+        this.directory = watchable ? parent : null;
+        this.namePattern = watchable ? name : null;
+    }
+
+    @Override
+    public boolean start()
+        throws Exception
+    {
+        if ( directory == null )
+        {
+            getContext().get( TaskListener.class ).getLogger().println(
+                "[maven-invoker] '" + reportsFilenamePattern + "' cannot be watched, reports are recorded once done" );
+        }
+        else
+        {
+            getContext().get( FilePath.class ).act( newWatcher() );
+            schedulePoll();
+        }
+        getContext().newBodyInvoker().withCallback( new Callback( this ) ).start();
+        return false;
+    }
+
+    @Override
+    public void onResume()
+    {
+        if ( directory != null )
+        {
+            schedulePoll();
+        }
+    }
+
+    @Override
+    public void stop( @NonNull Throwable cause )
+        throws Exception
+    {
+        // a running poll may wait for the agent, it is interrupted rather than waited for
+        cancelPoll( true );
+        if ( directory != null )
+        {
+            // the agent may not answer, the watcher expires anyway
+            RECORDINGS.submit( this::stopWatcher );
+        }
+        super.stop( cause );
+    }
+
+    private static ScheduledExecutorService recordings()
+    {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+            RECORDING_THREADS,
+            new NamingThreadFactory( new DaemonThreadFactory(), MavenInvokerLiveStepExecution.class.getSimpleName() ) );
+        executor.setKeepAliveTime( 1, TimeUnit.MINUTES );
+        executor.allowCoreThreadTimeOut( true );
+        executor.setRemoveOnCancelPolicy( true );
+        return new ImpersonatingScheduledExecutorService( executor, ACL.SYSTEM2 );
+    }
+
+    private ReportsWatcher.Start newWatcher()
+    {
+        return new ReportsWatcher.Start( watchId, directory, namePattern,
+                                         Math.max( MIN_IDLE_MILLIS, TimeUnit.SECONDS.toMillis( 10L * pollInterval ) ) );
+    }
+
+    private void stopWatcher()
+    {
+        try
+        {
+            FilePath workspace = getContext().get( FilePath.class );
+            if ( workspace != null && workspace.getChannel() != null )
+            {
+                workspace.act( new ReportsWatcher.Stop( watchId ) );
+            }
+        }
+        catch ( Exception e )
+        {
+            LOGGER.debug( "cannot stop the watcher of {}", getContext(), e );
+        }
+    }
+
+    private void schedulePoll()
+    {
+        poll = RECORDINGS.scheduleWithFixedDelay( this::poll, pollInterval, pollInterval, TimeUnit.SECONDS );
+        if ( stopped )
+        {
+            cancelPoll( false );
+        }
+    }
+
+    /**
+     * Stops the polls without the lock of the execution, which a running poll holds.
+     */
+    private void cancelPoll( boolean interrupt )
+    {
+        stopped = true;
+        ScheduledFuture<?> scheduled = poll;
+        if ( scheduled != null )
+        {
+            scheduled.cancel( interrupt );
+        }
+    }
+
+    /**
+     * Records the reports written since the previous poll. A failure is only logged, the reports are recorded
+     * by the next poll or once the body is over.
+     */
+    private synchronized void poll()
+    {
+        if ( stopped )
+        {
+            return;
+        }
+        try
+        {
+            FilePath workspace = getContext().get( FilePath.class );
+            if ( workspace == null || workspace.getChannel() == null )
+            {
+                return;
+            }
+            List<String> reports = workspace.act( new ReportsWatcher.Drain( watchId, QUIET_MILLIS ) );
+            if ( reports == null )
+            {
+                // the agent has been restarted, the reports written meanwhile are recorded once the body is over
+                workspace.act( newWatcher() );
+                return;
+            }
+            reports.removeAll( recorded );
+            if ( reports.isEmpty() || stopped )
+            {
+                return;
+            }
+            List<String> stored = newRecorder().record( getContext().get( Run.class ), workspace, pipelineDetails(),
+                                                        reports, null, historyResults );
+            recorded.addAll( stored );
+            getContext().get( TaskListener.class ).getLogger().println(
+                "[maven-invoker] recorded " + stored.size() + " new report(s)" );
+        }
+        catch ( Exception e )
+        {
+            LOGGER.warn( "cannot record the new reports of {}", getContext(), e );
+        }
+    }
+
+    /**
+     * Records the reports not recorded by a poll, adds the results of the step to the histories, stops the watcher
+     * and completes the step.
+     */
+    private void finish( Throwable bodyFailure )
+    {
+        cancelPoll( false );
+        StepContext context = getContext();
+        try
+        {
+            FilePath workspace = context.get( FilePath.class );
+            Run<?, ?> run = context.get( Run.class );
+            try
+            {
+                synchronized ( this )
+                {
+                    PipelineDetails pipelineDetails = pipelineDetails();
+                    List<String> stored = newRecorder().record( run, workspace, pipelineDetails, null,
+                                                                new HashSet<>( recorded ), historyResults );
+                    recorded.addAll( stored );
+                    MavenInvokerRecorder.storeHistory( run, pipelineDetails, historyResults );
+                    historyResults.clear();
+                }
+            }
+            finally
+            {
+                if ( directory != null )
+                {
+                    stopWatcher();
+                }
+            }
+            if ( bodyFailure != null )
+            {
+                context.onFailure( bodyFailure );
+                return;
+            }
+            MavenInvokerBuildAction action = context.get( Run.class ).getAction( MavenInvokerBuildAction.class );
+            context.onSuccess( action == null ? null : action.getMavenInvokerResults() );
+        }
+        catch ( Exception e )
+        {
+            if ( bodyFailure != null )
+            {
+                bodyFailure.addSuppressed( e );
+                context.onFailure( bodyFailure );
+            }
+            else
+            {
+                context.onFailure( e );
+            }
+        }
+    }
+
+    private MavenInvokerRecorder newRecorder()
+    {
+        MavenInvokerRecorder mavenInvokerRecorder = new MavenInvokerRecorder( reportsFilenamePattern, invokerBuildDir );
+        mavenInvokerRecorder.setParallelism( parallelism );
+        mavenInvokerRecorder.setRewriteReports( rewriteReports );
+        mavenInvokerRecorder.setLogPolicy( logPolicy );
+        mavenInvokerRecorder.setTruncatedLogBytes( truncatedLogBytes );
+        mavenInvokerRecorder.setMaxLogBytes( maxLogBytes );
+        mavenInvokerRecorder.setMaxBuildLogBytes( maxBuildLogBytes );
+        mavenInvokerRecorder.setLogCodec( logCodec );
+        mavenInvokerRecorder.setCompressionLevel( compressionLevel );
+        mavenInvokerRecorder.setDeduplicate( deduplicate );
+        mavenInvokerRecorder.setDurationRegressionFactor( durationRegressionFactor );
+        return mavenInvokerRecorder;
+    }
+
+    private PipelineDetails pipelineDetails()
+        throws Exception
+    {
+        FlowNode node = getContext().get( FlowNode.class );
+        PipelineDetails pipelineDetails = new PipelineDetails();
+        pipelineDetails.setNodeId( node.getId() );
+        pipelineDetails.setEnclosingBlockNames(
+            MavenInvokerStepExecution.getEnclosingBlockNames( node.getEnclosingBlocks() ) );
+        return pipelineDetails;
+    }
+
+    /**
+     * Completes the step off the CPS thread, the final recording reads the workspace.
+     */
+    private static final class Callback
+        extends BodyExecutionCallback
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final MavenInvokerLiveStepExecution execution;
+
+        Callback( MavenInvokerLiveStepExecution execution )
+        {
+            this.execution = execution;
+        }
+
+        @Override
+        public void onSuccess( StepContext context, Object result )
+        {
+            RECORDINGS.submit( () -> execution.finish( null ) );
+        }
+
+        @Override
+        public void onFailure( StepContext context, Throwable t )
+        {
+            RECORDINGS.submit( () -> execution.finish( t ) );
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+}
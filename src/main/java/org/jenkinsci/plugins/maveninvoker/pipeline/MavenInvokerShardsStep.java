@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.maveninvoker.pipeline;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the ITs of a job in balanced shards from their recorded times, each shard being a comma separated list
+ * to pass as <code>invoker.test</code> to a parallel branch:
+ * <pre>
+ * def shards = maven_invoker_shards(shards: 4)
+ * def branches = [:]
+ * shards.eachWithIndex { shard, i -&gt;
+ *   branches["its-${i}"] = { node { sh "mvn verify -Dinvoker.test=${shard}" } }
+ * }
+ * parallel branches
+ * </pre>
+ * At most <code>shards</code> lists are returned, none when no IT is known yet.
+ */
+public class MavenInvokerShardsStep
+    extends Step
+{
+
+    private final int shards;
+
+    private List<String> projects;
+
+    @DataBoundConstructor
+    public MavenInvokerShardsStep( int shards )
+    {
+        this.shards = shards;
+    }
+
+    @Override
+    public StepExecution start( StepContext stepContext )
+        throws Exception
+    {
+        return new MavenInvokerShardsStepExecution( stepContext, this );
+    }
+
+    public int getShards()
+    {
+        return shards;
+    }
+
+    /**
+     * @return the ITs to split, as directories or poms relative to the projects directory, <code>null</code>
+     * to split the ITs recorded by the previous builds
+     */
+    public List<String> getProjects()
+    {
+        return projects;
+    }
+
+    @DataBoundSetter
+    public void setProjects( List<String> projects )
+    {
+        this.projects = projects == null ? null : new ArrayList<>( projects );
+    }
+
+    @Extension
+    public static class DescriptorImpl
+        extends StepDescriptor
+    {
+        @Override
+        public String getFunctionName()
+        {
+            return "maven_invoker_shards";
+        }
+
+        @Override
+        @NonNull
+        public String getDisplayName()
+        {
+            return "Split Maven Invoker tests in shards of balanced duration";
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext()
+        {
+            Set<Class<?>> context = new HashSet<>();
+            Collections.addAll( context, Run.class, TaskListener.class );
+            return Collections.unmodifiableSet( context );
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.jenkinsci.plugins.maveninvoker.pipeline;
+
+import hudson.AbortException;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerBuildAction;
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerRecorder;
+import org.jenkinsci.plugins.maveninvoker.history.DurationHistory;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Splits the ITs with the longest processing time first rule: from the longest, each IT goes to the shard with
+ * the shortest total so far, so the longest shard stays within the time of one IT of the total divided by the
+ * number of shards.
+ */
+public class MavenInvokerShardsStepExecution
+    extends SynchronousNonBlockingStepExecution<List<String>>
+{
+
+    /**
+     * Time of an IT when no IT has a recorded time.
+     */
+    static final double DEFAULT_TIME = 1;
+
+    /**
+     * Number of previous builds looked at for the last recorded results.
+     */
+    private static final int MAX_PREVIOUS_BUILDS = 10;
+
+    private transient final MavenInvokerShardsStep step;
+
+    public MavenInvokerShardsStepExecution( @NonNull StepContext context, MavenInvokerShardsStep step )
+    {
+        super( context );
+        this.step = step;
+    }
+
+    @Override
+    protected List<String> run()
+        throws Exception
+    {
+        if ( step.getShards() < 1 )
+        {
+            throw new AbortException( "shards must be positive, not " + step.getShards() );
+        }
+        Run<?, ?> run = getContext().get( Run.class );
+        Set<String> projects = new LinkedHashSet<>();
+        Map<String, Double> times = recordedTimes( run, projects );
+        if ( step.getProjects() != null )
+        {
+            projects.clear();
+            for ( String project : step.getProjects() )
+            {
+                if ( StringUtils.isNotBlank( project ) )
+                {
+                    projects.add( include( project ) );
+                }
+            }
+        }
+        Map<String, Double> estimates = estimate( projects, times );
+        List<Shard> shards = balance( estimates, step.getShards() );
+
+        PrintStream logger = getContext().get( TaskListener.class ).getLogger();
+        double total = 0;
+        for ( Shard shard : shards )
+        {
+            total += shard.time;
+        }
+        long known = estimates.keySet().stream().filter( times::containsKey ).count();
+        logger.println( String.format( Locale.ENGLISH, "[maven-invoker] %d IT(s), %d with a recorded time, "
+            + "%.1fs in total split in %d shard(s)", estimates.size(), known, total, shards.size() ) );
+        List<String> includes = new ArrayList<>( shards.size() );
+        for ( Shard shard : shards )
+        {
+            logger.println( String.format( Locale.ENGLISH, "[maven-invoker] shard %d: %d IT(s), %.1fs",
+                                           shard.index + 1, shard.projects.size(), shard.time ) );
+            includes.add( shard.getInclude() );
+        }
+        return includes;
+    }
+
+    /**
+     * @param projects receives every IT of the last recorded build and of the history, whatever the parallel branch
+     * that ran them
+     * @return the usual time of the ITs, the median of their last times or else their time in the last build
+     */
+    static Map<String, Double> recordedTimes( Run<?, ?> run, Set<String> projects )
+    {
+        Map<String, Double> times = new HashMap<>();
+        Run<?, ?> previous = run.getPreviousCompletedBuild();
+        for ( int i = 0; previous != null && i < MAX_PREVIOUS_BUILDS; i++ )
+        {
+            MavenInvokerBuildAction action = previous.getAction( MavenInvokerBuildAction.class );
+            if ( action != null )
+            {
+                for ( InvokerResult invokerResult : action.getMavenInvokerResults().getInvokerResults() )
+                {
+                    if ( invokerResult.project == null )
+                    {
+                        continue;
+                    }
+                    String include = include( MavenInvokerRecorder.reportedProject( invokerResult.project ) );
+                    projects.add( include );
+                    // a skipped IT did not run, its time tells nothing
+                    if ( !StringUtils.equals( invokerResult.result, BuildJob.Result.SKIPPED ) )
+                    {
+                        times.merge( include, invokerResult.time, Math::max );
+                    }
+                }
+                break;
+            }
+            previous = previous.getPreviousCompletedBuild();
+        }
+        DurationHistory history = DurationHistory.get( run.getParent() );
+        if ( history != null )
+        {
+            for ( String project : history.getProjects() )
+            {
+                String include = include( project );
+                projects.add( include );
+                DurationHistory.Baseline baseline = history.getBaseline( project );
+                if ( baseline != null )
+                {
+                    times.put( include, baseline.getMedian() );
+                }
+            }
+        }
+        return times;
+    }
+
+    /**
+     * @return the time of each IT, the median of the known times of the ITs for the ITs without one
+     */
+    static Map<String, Double> estimate( Set<String> projects, Map<String, Double> times )
+    {
+        double[] known = projects.stream().filter( times::containsKey ).mapToDouble( times::get ).sorted()
+            .toArray();
+        double unknown = known.length == 0 ? DEFAULT_TIME
+            : known.length % 2 == 1 ? known[known.length / 2]
+            : ( known[known.length / 2 - 1] + known[known.length / 2] ) / 2;
+        Map<String, Double> estimates = new LinkedHashMap<>();
+        for ( String project : projects )
+        {
+            estimates.put( project, times.getOrDefault( project, unknown ) );
+        }
+        return estimates;
+    }
+
+    /**
+     * @return at most <code>count</code> shards, none empty, in the order they were filled
+     */
+    static List<Shard> balance( Map<String, Double> estimates, int count )
+    {
+        List<Map.Entry<String, Double>> its = new ArrayList<>( estimates.entrySet() );
+        // longest first, then by name for the same split from the same times
+        its.sort( Map.Entry.<String, Double>comparingByValue().reversed() //
+                      .thenComparing( Map.Entry.comparingByKey() ) );
+        int size = Math.min( count, its.size() );
+        // ITs taking no time still go to the empty shards first
+        PriorityQueue<Shard> shortest =
+            new PriorityQueue<>( Math.max( 1, size ), Comparator.comparingDouble( ( Shard s ) -> s.time ) //
+                .thenComparingInt( s -> s.projects.size() ).thenComparingInt( s -> s.index ) );
+        for ( int i = 0; i < size; i++ )
+        {
+            shortest.add( new Shard( i ) );
+        }
+        for ( Map.Entry<String, Double> it : its )
+        {
+            Shard shard = shortest.poll();
+            shard.projects.add( it.getKey() );
+            shard.time += it.getValue();
+            shortest.add( shard );
+        }
+        Shard[] shards = shortest.toArray( new Shard[0] );
+        Arrays.sort( shards, Comparator.comparingInt( s -> s.index ) );
+        return Arrays.asList( shards );
+    }
+
+    /**
+     * @return the IT as written in <code>invoker.test</code>, its directory when it is built by its
+     * <code>pom.xml</code>
+     */
+    static String include( String project )
+    {
+        String include = StringUtils.removeEnd( project.trim().replace( '\\', '/' ), "/pom.xml" );
+        return StringUtils.removeEnd( include, "/" );
+    }
+
+    static final class Shard
+    {
+        final int index;
+
+        final List<String> projects = new ArrayList<>();
+
+        double time;
+
+        Shard( int index )
+        {
+            this.index = index;
+        }
+
+        /**
+         * @return the ITs of the shard by name, comma separated
+         */
+        String getInclude()
+        {
+            List<String> sorted = new ArrayList<>( projects );
+            sorted.sort( null );
+            return StringUtils.join( sorted, ',' );
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -4,13 +4,16 @@ import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.TaskListener;
+import org.jenkinsci.plugins.maveninvoker.LogPolicy;
 import org.jenkinsci.plugins.maveninvoker.MavenInvokerRecorder;
+import org.jenkinsci.plugins.maveninvoker.storage.LogCodec;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.steps.Step;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
 import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.util.Collections;
@@ -25,6 +28,26 @@ public class MavenInvokerStep
 
     private String invokerBuildDir;
 
+    private int parallelism = 1;
+
+    private boolean rewriteReports;
+
+    private LogPolicy logPolicy = LogPolicy.ALL;
+
+    private long truncatedLogBytes = MavenInvokerRecorder.DEFAULT_TRUNCATED_LOG_BYTES;
+
+    private long maxLogBytes;
+
+    private long maxBuildLogBytes;
+
+    private LogCodec logCodec = LogCodec.ZIP;
+
+    private int compressionLevel;
+
+    private boolean deduplicate;
+
+    private double durationRegressionFactor;
+
     public MavenInvokerStep()
     {
         this.reportsFilenamePattern = MavenInvokerRecorder.DEFAULT_REPORTS_FILENAME_PATTERN;
@@ -67,6 +90,116 @@ public class MavenInvokerStep
         this.invokerBuildDir = invokerBuildDir;
     }
 
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    @DataBoundSetter
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isRewriteReports()
+    {
+        return rewriteReports;
+    }
+
+    @DataBoundSetter
+    public void setRewriteReports( boolean rewriteReports )
+    {
+        this.rewriteReports = rewriteReports;
+    }
+
+    public LogPolicy getLogPolicy()
+    {
+        return logPolicy;
+    }
+
+    @DataBoundSetter
+    public void setLogPolicy( LogPolicy logPolicy )
+    {
+        this.logPolicy = logPolicy;
+    }
+
+    public long getTruncatedLogBytes()
+    {
+        return truncatedLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setTruncatedLogBytes( long truncatedLogBytes )
+    {
+        this.truncatedLogBytes = truncatedLogBytes;
+    }
+
+    public long getMaxLogBytes()
+    {
+        return maxLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxLogBytes( long maxLogBytes )
+    {
+        this.maxLogBytes = maxLogBytes;
+    }
+
+    public long getMaxBuildLogBytes()
+    {
+        return maxBuildLogBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxBuildLogBytes( long maxBuildLogBytes )
+    {
+        this.maxBuildLogBytes = maxBuildLogBytes;
+    }
+
+    public LogCodec getLogCodec()
+    {
+        return logCodec;
+    }
+
+    @DataBoundSetter
+    public void setLogCodec( LogCodec logCodec )
+    {
+        this.logCodec = logCodec;
+    }
+
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    @DataBoundSetter
+    public void setCompressionLevel( int compressionLevel )
+    {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public boolean isDeduplicate()
+    {
+        return deduplicate;
+    }
+
+    @DataBoundSetter
+    public void setDeduplicate( boolean deduplicate )
+    {
+        this.deduplicate = deduplicate;
+    }
+
+    public double getDurationRegressionFactor()
+    {
+        return durationRegressionFactor;
+    }
+
+    @DataBoundSetter
+    public void setDurationRegressionFactor( double durationRegressionFactor )
+    {
+        this.durationRegressionFactor = durationRegressionFactor;
+    }
+
     @Extension
     public static class DescriptorImpl
         extends StepDescriptor
@@ -36,6 +36,16 @@ public class MavenInvokerStepExecution extends SynchronousNonBlockingStepExecuti
     {
         MavenInvokerRecorder mavenInvokerRecorder =
             new MavenInvokerRecorder(step.getReportsFilenamePattern(), step.getInvokerBuildDir());
+        mavenInvokerRecorder.setParallelism( step.getParallelism() );
+        mavenInvokerRecorder.setRewriteReports( step.isRewriteReports() );
+        mavenInvokerRecorder.setLogPolicy( step.getLogPolicy() );
+        mavenInvokerRecorder.setTruncatedLogBytes( step.getTruncatedLogBytes() );
+        mavenInvokerRecorder.setMaxLogBytes( step.getMaxLogBytes() );
+        mavenInvokerRecorder.setMaxBuildLogBytes( step.getMaxBuildLogBytes() );
+        mavenInvokerRecorder.setLogCodec( step.getLogCodec() );
+        mavenInvokerRecorder.setCompressionLevel( step.getCompressionLevel() );
+        mavenInvokerRecorder.setDeduplicate( step.isDeduplicate() );
+        mavenInvokerRecorder.setDurationRegressionFactor( step.getDurationRegressionFactor() );
         FlowNode node = getContext().get( FlowNode.class);
 
         String nodeId = node.getId();
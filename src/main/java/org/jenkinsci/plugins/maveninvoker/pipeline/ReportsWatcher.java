@@ -0,0 +1,276 @@
+package org.jenkinsci.plugins.maveninvoker.pipeline;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Watches the reports directory of a workspace on the agent, so the controller only asks for the reports written
+ * since its last call instead of scanning the workspace. Watchers live in the agent JVM until stopped, or until
+ * left unused for their idle time when the controller never stops them.
+ */
+final class ReportsWatcher
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger( ReportsWatcher.class );
+
+    private static final Map<String, ReportsWatcher> WATCHERS = new ConcurrentHashMap<>();
+
+    private final Path workspace;
+
+    private final Path directory;
+
+    private final PathMatcher matcher;
+
+    private final long idleMillis;
+
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * <code>null</code> until the directory exists. Guarded by this.
+     */
+    private WatchService watchService;
+
+    /**
+     * Reports created or modified and not drained yet. Guarded by this.
+     */
+    private final Set<Path> pending = new LinkedHashSet<>();
+
+    private ReportsWatcher( Path workspace, Path directory, String namePattern, long idleMillis )
+    {
+        this.workspace = workspace;
+        this.directory = directory;
+        this.matcher = FileSystems.getDefault().getPathMatcher( "glob:" + namePattern );
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Stops the watchers not drained for their idle time, left by a step aborted or by a controller gone.
+     */
+    private static void expire()
+    {
+        long now = System.currentTimeMillis();
+        for ( Iterator<Map.Entry<String, ReportsWatcher>> iterator = WATCHERS.entrySet().iterator();
+              iterator.hasNext(); )
+        {
+            ReportsWatcher watcher = iterator.next().getValue();
+            if ( now - watcher.lastUsed > watcher.idleMillis )
+            {
+                LOGGER.debug( "stop the idle watcher of {}", watcher.directory );
+                iterator.remove();
+                watcher.close();
+            }
+        }
+    }
+
+    /**
+     * @param quietMillis time a report must have been left untouched, so it is not read while being written
+     * @return the workspace relative paths of the reports written since the previous call
+     */
+    private synchronized List<String> drain( long quietMillis )
+        throws IOException
+    {
+        if ( watchService == null )
+        {
+            if ( !Files.isDirectory( directory ) )
+            {
+                return new ArrayList<>();
+            }
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY );
+            // written before the registration
+            listDirectory();
+        }
+        WatchKey key;
+        while ( ( key = watchService.poll() ) != null )
+        {
+            for ( WatchEvent<?> event : key.pollEvents() )
+            {
+                if ( event.kind() == StandardWatchEventKinds.OVERFLOW )
+                {
+                    listDirectory();
+                }
+                else if ( matcher.matches( (Path) event.context() ) )
+                {
+                    pending.add( directory.resolve( (Path) event.context() ) );
+                }
+            }
+            if ( !key.reset() )
+            {
+                // the directory has been deleted, watched again once created
+                close();
+                break;
+            }
+        }
+
+        List<String> reports = new ArrayList<>();
+        long quietSince = System.currentTimeMillis() - quietMillis;
+        for ( Iterator<Path> iterator = pending.iterator(); iterator.hasNext(); )
+        {
+            File report = iterator.next().toFile();
+            if ( !report.isFile() )
+            {
+                iterator.remove();
+            }
+            else if ( report.lastModified() <= quietSince && report.length() > 0 )
+            {
+                reports.add( workspace.relativize( report.toPath() ).toString().replace( File.separatorChar, '/' ) );
+                iterator.remove();
+            }
+        }
+        return reports;
+    }
+
+    private void listDirectory()
+        throws IOException
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream( directory ))
+        {
+            for ( Path path : stream )
+            {
+                if ( matcher.matches( path.getFileName() ) )
+                {
+                    pending.add( path );
+                }
+            }
+        }
+    }
+
+    private synchronized void close()
+    {
+        if ( watchService != null )
+        {
+            try
+            {
+                watchService.close();
+            }
+            catch ( IOException e )
+            {
+                LOGGER.debug( "cannot close watch service of {}", directory, e );
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * Starts watching a directory of the workspace for reports matching a file name pattern.
+     */
+    static final class Start
+        extends MasterToSlaveFileCallable<Void>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        private final String directory;
+
+        private final String namePattern;
+
+        private final long idleMillis;
+
+        /**
+         * @param idleMillis time after which the watcher is stopped if not drained
+         */
+        Start( String id, String directory, String namePattern, long idleMillis )
+        {
+            this.id = id;
+            this.directory = directory;
+            this.namePattern = namePattern;
+            this.idleMillis = idleMillis;
+        }
+
+        @Override
+        public Void invoke( File workspace, VirtualChannel channel )
+        {
+            expire();
+            Path root = workspace.toPath();
+            ReportsWatcher previous =
+                WATCHERS.put( id, new ReportsWatcher( root, root.resolve( directory ), namePattern, idleMillis ) );
+            if ( previous != null )
+            {
+                previous.close();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @see #drain(long)
+     */
+    static final class Drain
+        extends MasterToSlaveFileCallable<List<String>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        private final long quietMillis;
+
+        Drain( String id, long quietMillis )
+        {
+            this.id = id;
+            this.quietMillis = quietMillis;
+        }
+
+        /**
+         * @return <code>null</code> if the agent does not know the watcher, after a restart
+         */
+        @Override
+        public List<String> invoke( File workspace, VirtualChannel channel )
+            throws IOException
+        {
+            expire();
+            ReportsWatcher watcher = WATCHERS.get( id );
+            if ( watcher == null )
+            {
+                return null;
+            }
+            watcher.lastUsed = System.currentTimeMillis();
+            return watcher.drain( quietMillis );
+        }
+    }
+
+    static final class Stop
+        extends MasterToSlaveFileCallable<Void>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        Stop( String id )
+        {
+            this.id = id;
+        }
+
+        @Override
+        public Void invoke( File workspace, VirtualChannel channel )
+        {
+            ReportsWatcher watcher = WATCHERS.remove( id );
+            if ( watcher != null )
+            {
+                watcher.close();
+            }
+            return null;
+        }
+    }
+}
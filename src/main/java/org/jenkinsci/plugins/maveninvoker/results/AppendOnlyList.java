@@ -0,0 +1,230 @@
+package org.jenkinsci.plugins.maveninvoker.results;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * List where elements are only appended, stored in fixed size chunks so appending never copies the elements
+ * already there. Appends are serialized, reads never lock and see the elements appended before the size they read.
+ * Iterators walk the elements there when they were created and never fail because of later appends.
+ */
+final class AppendOnlyList<E>
+    extends AbstractList<E>
+    implements RandomAccess, Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final int CHUNK_SHIFT = 10;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Written before {@link #size} when growing, so a reader of the size sees chunks holding that many elements.
+     */
+    private transient volatile Object[][] chunks = new Object[1][];
+
+    private transient volatile int size;
+
+    AppendOnlyList()
+    {
+        // no op
+    }
+
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public E get( int index )
+    {
+        if ( index < 0 || index >= size )
+        {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+        }
+        return (E) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean add( E element )
+    {
+        int index = size;
+        chunk( index )[index & CHUNK_MASK] = element;
+        size = index + 1;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean addAll( Collection<? extends E> elements )
+    {
+        int index = size;
+        for ( E element : elements )
+        {
+            chunk( index )[index & CHUNK_MASK] = element;
+            index++;
+        }
+        if ( index == size )
+        {
+            return false;
+        }
+        // published at once
+        size = index;
+        return true;
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        return listIterator( 0 );
+    }
+
+    @Override
+    public ListIterator<E> listIterator()
+    {
+        return listIterator( 0 );
+    }
+
+    @Override
+    public ListIterator<E> listIterator( int index )
+    {
+        int end = size;
+        if ( index < 0 || index > end )
+        {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + end );
+        }
+        return new Snapshot( index, end );
+    }
+
+    /**
+     * Read only iterator over the elements before the size read at its creation.
+     */
+    private final class Snapshot
+        implements ListIterator<E>
+    {
+        private final int end;
+
+        private int cursor;
+
+        Snapshot( int cursor, int end )
+        {
+            this.cursor = cursor;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return cursor < end;
+        }
+
+        @Override
+        public E next()
+        {
+            if ( cursor >= end )
+            {
+                throw new NoSuchElementException();
+            }
+            return get( cursor++ );
+        }
+
+        @Override
+        public boolean hasPrevious()
+        {
+            return cursor > 0;
+        }
+
+        @Override
+        public E previous()
+        {
+            if ( cursor <= 0 )
+            {
+                throw new NoSuchElementException();
+            }
+            return get( --cursor );
+        }
+
+        @Override
+        public int nextIndex()
+        {
+            return cursor;
+        }
+
+        @Override
+        public int previousIndex()
+        {
+            return cursor - 1;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void set( E element )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add( E element )
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private Object[] chunk( int index )
+    {
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        Object[][] current = chunks;
+        if ( chunkIndex == current.length )
+        {
+            // only the references to the chunks are copied
+            current = Arrays.copyOf( current, current.length * 2 );
+            chunks = current;
+        }
+        Object[] chunk = current[chunkIndex];
+        if ( chunk == null )
+        {
+            chunk = new Object[CHUNK_SIZE];
+            current[chunkIndex] = chunk;
+        }
+        return chunk;
+    }
+
+    private Object writeReplace()
+    {
+        return new ArrayList<>( this );
+    }
+}
@@ -20,44 +20,218 @@ package org.jenkinsci.plugins.maveninvoker.results;
  * under the License.
  */
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.zip.ZipInputStream;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.Run;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.apache.maven.plugins.invoker.model.io.xpp3.BuildJobXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerMetrics;
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerRecorder;
+import org.jenkinsci.plugins.maveninvoker.history.DurationHistory;
+import org.jenkinsci.plugins.maveninvoker.history.OutcomeHistory;
+import org.jenkinsci.plugins.maveninvoker.storage.BlobStore;
+import org.jenkinsci.plugins.maveninvoker.storage.LogStreams;
+import org.jenkinsci.plugins.maveninvoker.storage.ReportsArchive;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * @author Olivier Lamy
  */
+@ExportedBean( defaultVisibility = 2 )
 public class InvokerResult
     implements Serializable
 {
 
     private static final long serialVersionUID = 1L;
 
+    @Exported
     public String project;
 
+    @Exported
     public String name;
 
+    /**
+     * Only kept in memory for results without {@link #archive}, read from the report otherwise,
+     * see {@link #getDescription()}.
+     */
     public String description;
 
+    /**
+     * One of the {@link BuildJob.Result} constants, shared by all the results.
+     */
+    @Exported
     public String result;
 
+    /**
+     * Only kept in memory for results without {@link #archive}, read from the report otherwise,
+     * see {@link #getFailureMessage()}.
+     */
     public String failureMessage;
 
+    @Exported
     public double time;
 
+    /**
+     * Median time of the IT over the previous builds when this result took much longer, <code>0</code> otherwise.
+     */
+    @Exported
+    public double baselineTime;
+
+    /**
+     * <code>null</code> when derived from {@link #project}, see {@link #getLogFilename()}.
+     */
     public String logFilename;
 
+    /**
+     * Name of the build archive holding the report and logs, <code>null</code> when stored in a directory
+     * per project by previous versions.
+     */
+    public String archive;
+
     public transient Run<?,?> build;
 
+    /**
+     * @deprecated logs are no longer loaded in memory, use {@link #openLog()}
+     */
+    @Deprecated
     public transient String log;
 
+    /**
+     * Name of the log of an IT in its directory, next to its report.
+     */
+    public static final String LOG_NAME = "build.log.zip";
+
+    /**
+     * Number of lines of the log shown by default.
+     */
+    public static final int DEFAULT_TAIL_LINES = 1000;
+
+    /**
+     * Maximum number of lines of the log shown in the page, the full log is available with {@link #doLog}.
+     */
+    public static final int MAX_TAIL_LINES = 50000;
+
+    /**
+     * Maximum number of bytes returned by a range request on the log.
+     */
+    public static final int MAX_RANGE_LENGTH = 1024 * 1024;
+
+    /**
+     * The values of {@link #result}, their index is the code of the result.
+     */
+    private static final String[] RESULTS =
+        { BuildJob.Result.SUCCESS, BuildJob.Result.FAILURE_BUILD, BuildJob.Result.FAILURE_PRE_HOOK,
+            BuildJob.Result.FAILURE_POST_HOOK, BuildJob.Result.SKIPPED, BuildJob.Result.ERROR };
+
     public InvokerResult()
     {
         // no op
     }
 
+    protected Object readResolve()
+    {
+        return compact();
+    }
+
+    /**
+     * Shares the result and drops the log filename when derived, for results serialized by previous versions
+     * or sent by the agents.
+     */
+    public InvokerResult compact()
+    {
+        result = canonicalResult( result );
+        if ( logFilename != null && logFilename.equals( logFilename( project ) ) )
+        {
+            logFilename = null;
+        }
+        return this;
+    }
+
+    /**
+     * @return the {@link BuildJob.Result} constant equal to <code>result</code>, or <code>result</code> if none is
+     */
+    public static String canonicalResult( String result )
+    {
+        int code = resultCode( result );
+        return code < 0 ? result : RESULTS[code];
+    }
+
+    /**
+     * @return the code of a result, <code>-1</code> if it is not one of the {@link BuildJob.Result} constants
+     */
+    public static int resultCode( String result )
+    {
+        for ( int i = 0; i < RESULTS.length; i++ )
+        {
+            if ( RESULTS[i].equals( result ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the result of a code given by {@link #resultCode(String)}
+     */
+    public static String result( int code )
+    {
+        return RESULTS[code];
+    }
+
+    /**
+     * @return the name, relative to the storage of the build, of the log of a project
+     */
+    public static String logFilename( String project )
+    {
+        return storageDirectory( project ) + LOG_NAME;
+    }
+
+    /**
+     * @return the directory, relative to the storage of the build and ending with a slash, of the report and logs of
+     * a project, unless recorded otherwise with {@link #setStorageDirectory(String)}
+     */
+    public static String storageDirectory( @CheckForNull String project )
+    {
+        String directory = StringUtils.removeEnd( StringUtils.defaultString( project ), "/pom.xml" );
+        return StringUtils.replace( directory, "/", "_" ) + "/";
+    }
+
+    /**
+     * Records the directory of the report and logs when it is not the one derived from the project.
+     */
+    public void setStorageDirectory( String directory )
+    {
+        String name = directory + LOG_NAME;
+        logFilename = project != null && name.equals( logFilename( project ) ) ? null : name;
+    }
+
+    public String getLogFilename()
+    {
+        return logFilename != null || project == null ? logFilename : logFilename( project );
+    }
+
     public String getUrl()
     {
         return project.replace( "/pom.xml", "" );
@@ -68,6 +242,251 @@ public class InvokerResult
         return URLEncoder.encode( this.project, "UTF-8" );
     }
 
+    /**
+     * Not exported, the remote API would read the report of each IT: the description and failure message are
+     * returned by {@link org.jenkinsci.plugins.maveninvoker.MavenInvokerBuildAction#doResults} when asked for.
+     */
+    public String getDescription()
+    {
+        if ( description != null || !hasStoredReport() )
+        {
+            return description;
+        }
+        BuildJob buildJob = readReport();
+        return buildJob == null ? null : buildJob.getDescription();
+    }
+
+    /**
+     * Not exported, see {@link #getDescription()}.
+     */
+    public String getFailureMessage()
+    {
+        if ( failureMessage != null || !hasStoredReport() )
+        {
+            return failureMessage;
+        }
+        BuildJob buildJob = readReport();
+        return buildJob == null ? null : buildJob.getFailureMessage();
+    }
+
+    /**
+     * @return a copy of this result holding the description and failure message, read once from the report
+     */
+    public InvokerResult withDetails()
+    {
+        InvokerResult copy = new InvokerResult();
+        copy.project = project;
+        copy.name = name;
+        copy.description = description;
+        copy.result = result;
+        copy.failureMessage = failureMessage;
+        copy.time = time;
+        copy.baselineTime = baselineTime;
+        copy.logFilename = logFilename;
+        copy.archive = archive;
+        copy.build = build;
+        if ( description == null && failureMessage == null && hasStoredReport() )
+        {
+            BuildJob buildJob = readReport();
+            if ( buildJob != null )
+            {
+                copy.description = buildJob.getDescription();
+                copy.failureMessage = buildJob.getFailureMessage();
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Drops the description and failure message when they can be read again from the report.
+     */
+    public void stripDetails()
+    {
+        if ( archive != null )
+        {
+            description = null;
+            failureMessage = null;
+        }
+    }
+
+    private boolean hasStoredReport()
+    {
+        return archive != null && build != null && getLogFilename() != null;
+    }
+
+    @CheckForNull
+    private BuildJob readReport()
+    {
+        File storage = new File( build.getRootDir(), MavenInvokerRecorder.STORAGE_DIRECTORY );
+        ReportsArchive reportsArchive =
+            new ReportsArchive( new File( storage, archive ), BlobStore.get( build.getParent() ) );
+        try (InputStream inputStream = reportsArchive.openEntry( getReportEntryName() ))
+        {
+            return inputStream == null ? null : new BuildJobXpp3Reader().read( inputStream );
+        }
+        catch ( IOException | XmlPullParserException e )
+        {
+            LoggerFactory.getLogger( getClass() ).warn( "cannot read report of " + project, e );
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if this IT took much longer than in the previous builds, see {@link #baselineTime}
+     */
+    public boolean isSlower()
+    {
+        return baselineTime > 0;
+    }
+
+    /**
+     * @return the usual time of this IT over the last builds of the job, whatever the parallel branch that ran it,
+     * <code>null</code> if unknown
+     */
+    @CheckForNull
+    public DurationHistory.Baseline getBaseline()
+    {
+        DurationHistory history = build == null || project == null ? null : DurationHistory.get( build.getParent() );
+        return history == null ? null : history.getBaseline( MavenInvokerRecorder.reportedProject( project ) );
+    }
+
+    /**
+     * @return <code>true</code> if the outcome of this IT often changed in the last builds of the job
+     */
+    @Exported
+    public boolean isFlaky()
+    {
+        OutcomeHistory history = outcomeHistory();
+        return history != null && history.isFlaky( project );
+    }
+
+    /**
+     * @return the ratio of the last builds of the job where the outcome of this IT changed
+     */
+    @Exported
+    public double getFlipRate()
+    {
+        OutcomeHistory history = outcomeHistory();
+        return history == null ? 0 : history.getFlipRate( project );
+    }
+
+    @CheckForNull
+    private OutcomeHistory outcomeHistory()
+    {
+        return build == null || project == null ? null : OutcomeHistory.get( build.getParent() );
+    }
+
+    /**
+     * Opens the uncompressed log straight from the storage of the build.
+     *
+     * @return <code>null</code> if no log has been stored
+     */
+    @CheckForNull
+    public InputStream openLog()
+        throws IOException
+    {
+        String logFilename = getLogFilename();
+        if ( build == null || logFilename == null )
+        {
+            return null;
+        }
+        File storage = new File( build.getRootDir(), MavenInvokerRecorder.STORAGE_DIRECTORY );
+        if ( archive != null )
+        {
+            return new ReportsArchive( new File( storage, archive ), BlobStore.get( build.getParent() ) ) //
+                .openLog( logFilename );
+        }
+        // stored in a directory per project by previous versions
+        File zip = new File( storage, logFilename );
+        if ( !zip.isFile() )
+        {
+            return null;
+        }
+        ZipInputStream zipInputStream = new ZipInputStream( new FileInputStream( zip ) );
+        if ( zipInputStream.getNextEntry() == null )
+        {
+            zipInputStream.close();
+            return null;
+        }
+        return zipInputStream;
+    }
+
+    /**
+     * @return the name of the report entry in the {@link #archive}, stored next to the log
+     */
+    public String getReportEntryName()
+    {
+        return StringUtils.substringBeforeLast( getLogFilename(), "/" ) + "/" + ReportsArchive.REPORT_ENTRY_NAME;
+    }
+
+    /**
+     * @return the number of lines of the log to show, from the <code>tail</code> request parameter
+     */
+    public int getTailLines()
+    {
+        StaplerRequest request = Stapler.getCurrentRequest();
+        String tail = request == null ? null : request.getParameter( "tail" );
+        int lines = NumberUtils.toInt( tail, DEFAULT_TAIL_LINES );
+        return Math.max( 1, Math.min( lines, MAX_TAIL_LINES ) );
+    }
+
+    /**
+     * @return the last {@link #getTailLines()} lines of the log
+     */
+    public String getLogTail()
+    {
+        long start = System.nanoTime();
+        try (InputStream inputStream = openLog())
+        {
+            String tail =
+                inputStream == null ? "" : LogStreams.tail( inputStream, Charset.defaultCharset(), getTailLines() );
+            MavenInvokerMetrics.logRead( start, tail.length() );
+            return tail;
+        }
+        catch ( IOException e )
+        {
+            LoggerFactory.getLogger( getClass() ).warn( "cannot read log of " + project, e );
+            return "";
+        }
+    }
+
+    /**
+     * Streams the raw log. The <code>start</code> and <code>length</code> parameters select a byte range of at most
+     * {@link #MAX_RANGE_LENGTH} bytes, then the <code>X-Text-Size</code> header gives the offset to continue from and
+     * <code>X-More-Data</code> tells if the log goes on.
+     */
+    public void doLog( StaplerRequest req, StaplerResponse rsp )
+        throws IOException
+    {
+        long readStart = System.nanoTime();
+        String startParameter = req.getParameter( "start" );
+        String lengthParameter = req.getParameter( "length" );
+        try (InputStream inputStream = openLog())
+        {
+            if ( inputStream == null )
+            {
+                rsp.sendError( HttpServletResponse.SC_NOT_FOUND );
+                return;
+            }
+            rsp.setContentType( "text/plain;charset=" + Charset.defaultCharset().name() );
+            if ( startParameter == null && lengthParameter == null )
+            {
+                MavenInvokerMetrics.logRead( readStart, IOUtils.copyLarge( inputStream, rsp.getOutputStream() ) );
+                return;
+            }
+            long start = Math.max( 0, NumberUtils.toLong( startParameter, 0 ) );
+            long length = NumberUtils.toLong( lengthParameter, MAX_RANGE_LENGTH );
+            length = length < 0 ? MAX_RANGE_LENGTH : Math.min( length, MAX_RANGE_LENGTH );
+            // the headers go first, so the bounded range is buffered
+            ByteArrayOutputStream range = new ByteArrayOutputStream();
+            long copied = LogStreams.copyRange( inputStream, range, start, length );
+            rsp.setHeader( "X-Text-Size", String.valueOf( start + copied ) );
+            rsp.setHeader( "X-More-Data", String.valueOf( inputStream.read() != -1 ) );
+            range.writeTo( rsp.getOutputStream() );
+            MavenInvokerMetrics.logRead( readStart, copied );
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -79,7 +498,8 @@ public class InvokerResult
         sb.append( ", result='" ).append( result ).append( '\'' );
         sb.append( ", failureMessage='" ).append( failureMessage ).append( '\'' );
         sb.append( ", time=" ).append( time );
-        sb.append( ", logFilename=" ).append( logFilename );
+        sb.append( ", logFilename=" ).append( getLogFilename() );
+        sb.append( ", archive=" ).append( archive );
         sb.append( '}' );
         return sb.toString();
     }
@@ -21,31 +21,157 @@ package org.jenkinsci.plugins.maveninvoker.results;
  */
 
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
 
 /**
  * @author Olivier Lamy
  */
+@ExportedBean
 public class MavenInvokerResults implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    private List<InvokerResult> invokerResults = new CopyOnWriteArrayList<>();
+    /**
+     * Appended by concurrent recordings without copying the results already there.
+     */
+    private List<InvokerResult> invokerResults = new AppendOnlyList<>();
+
+    /**
+     * Results by project, built once and completed as results are appended.
+     */
+    private transient Map<String, InvokerResult> index;
+
+    private transient int indexedCount;
+
+    /**
+     * Results sorted by {@link ResultsQuery} sort, built again once results have been appended.
+     */
+    private transient Map<String, List<InvokerResult>> sortedViews;
+
+    private transient int sortedCount;
 
     public MavenInvokerResults() {
         // no op
     }
 
     @NonNull
+    @Exported( inline = true )
     public List<InvokerResult> getInvokerResults() {
         return invokerResults;
     }
 
-    public void setInvokerResults( List<InvokerResult> invokerResults )
+    public synchronized void setInvokerResults( List<InvokerResult> invokerResults )
+    {
+        this.invokerResults = appendOnly( invokerResults );
+        this.index = null;
+        this.sortedViews = null;
+    }
+
+    /**
+     * @param sort a {@link ResultsQuery} sort
+     * @return the results in the order of the sort, the recording order if it is unknown
+     */
+    @NonNull
+    public List<InvokerResult> getSortedResults( String sort )
+    {
+        Comparator<InvokerResult> comparator = ResultsQuery.comparator( sort );
+        if ( comparator == null )
+        {
+            return invokerResults;
+        }
+        synchronized ( this )
+        {
+            if ( sortedViews == null || sortedCount != invokerResults.size() )
+            {
+                sortedViews = new HashMap<>();
+                sortedCount = invokerResults.size();
+            }
+            List<InvokerResult> sorted = sortedViews.get( sort );
+            if ( sorted == null )
+            {
+                List<InvokerResult> copy = new ArrayList<>( invokerResults );
+                copy.sort( comparator );
+                sorted = Collections.unmodifiableList( copy );
+                // appended while copying, sorted again next time
+                if ( copy.size() == sortedCount )
+                {
+                    sortedViews.put( sort, sorted );
+                }
+            }
+            return sorted;
+        }
+    }
+
+    private Object readResolve()
+    {
+        invokerResults = appendOnly( invokerResults );
+        return this;
+    }
+
+    private static List<InvokerResult> appendOnly( List<InvokerResult> invokerResults )
+    {
+        if ( invokerResults instanceof AppendOnlyList )
+        {
+            return invokerResults;
+        }
+        List<InvokerResult> list = new AppendOnlyList<>();
+        if ( invokerResults != null )
+        {
+            list.addAll( invokerResults );
+        }
+        return list;
+    }
+
+    /**
+     * @return the results much slower than in the previous builds, see {@link InvokerResult#baselineTime}
+     */
+    @NonNull
+    public List<InvokerResult> getSlowerResults()
+    {
+        List<InvokerResult> slower = new ArrayList<>();
+        for ( InvokerResult invokerResult : invokerResults )
+        {
+            if ( invokerResult.isSlower() )
+            {
+                slower.add( invokerResult );
+            }
+        }
+        return slower;
+    }
+
+    /**
+     * @return the first result of a project, <code>null</code> if there is none
+     */
+    @CheckForNull
+    public synchronized InvokerResult getInvokerResult( String project )
     {
-        this.invokerResults = invokerResults;
+        List<InvokerResult> results = invokerResults;
+        if ( index == null || indexedCount > results.size() )
+        {
+            index = new HashMap<>( results.size() * 4 / 3 + 1 );
+            indexedCount = 0;
+        }
+        // results are only appended
+        for ( int i = indexedCount; i < results.size(); i++ )
+        {
+            InvokerResult invokerResult = results.get( i );
+            if ( invokerResult.project != null )
+            {
+                index.putIfAbsent( invokerResult.project, invokerResult );
+            }
+        }
+        indexedCount = results.size();
+        return index.get( project );
     }
 
 }
@@ -0,0 +1,92 @@
+package org.jenkinsci.plugins.maveninvoker.results;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.List;
+
+/**
+ * Results selected by a {@link ResultsQuery}.
+ */
+public final class ResultsPage
+{
+    private final ResultsQuery query;
+
+    private final List<InvokerResult> results;
+
+    private final int total;
+
+    ResultsPage( ResultsQuery query, List<InvokerResult> results, int total )
+    {
+        this.query = query;
+        this.results = results;
+        this.total = total;
+    }
+
+    public ResultsQuery getQuery()
+    {
+        return query;
+    }
+
+    public List<InvokerResult> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * @return the number of results kept by the query, in all the pages
+     */
+    public int getTotal()
+    {
+        return total;
+    }
+
+    public boolean isFirst()
+    {
+        return query.getStart() == 0;
+    }
+
+    public boolean isLast()
+    {
+        return query.getEnd() >= total;
+    }
+
+    public int getPreviousStart()
+    {
+        return Math.max( 0, query.getStart() - query.getLimit() );
+    }
+
+    public int getNextStart()
+    {
+        return query.getEnd();
+    }
+
+    /**
+     * @return the first and last positions, from 1, of the results of this page
+     */
+    public int getFrom()
+    {
+        return results.isEmpty() ? 0 : query.getStart() + 1;
+    }
+
+    public int getTo()
+    {
+        return query.getStart() + results.size();
+    }
+}
@@ -0,0 +1,300 @@
+package org.jenkinsci.plugins.maveninvoker.results;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Filter and window over the results of a build, read from the request parameters:
+ * <ul>
+ *     <li><code>status</code>: comma separated results to keep, <code>failures</code> for every result but success
+ *     and skipped, <code>slower</code> for the ITs much slower than in the previous builds</li>
+ *     <li><code>prefix</code>: start of the name or project of the ITs to keep</li>
+ *     <li><code>minTime</code>: shortest time, in seconds, of the ITs to keep</li>
+ *     <li><code>sort</code>: <code>failures</code> for the failures first, <code>project</code>, <code>result</code>
+ *     or <code>time</code> for the longest first, the recording order otherwise</li>
+ *     <li><code>start</code> and <code>limit</code>: window over the kept results</li>
+ * </ul>
+ */
+public final class ResultsQuery
+{
+    public static final String FAILURES = "failures";
+
+    public static final String SLOWER = "slower";
+
+    public static final String SORT_FAILURES = "failures";
+
+    public static final String SORT_PROJECT = "project";
+
+    public static final String SORT_RESULT = "result";
+
+    public static final String SORT_TIME = "time";
+
+    private static final Comparator<InvokerResult> BY_PROJECT =
+        Comparator.comparing( ( InvokerResult r ) -> r.project, Comparator.nullsLast( Comparator.naturalOrder() ) );
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    public static final int MAX_LIMIT = 5000;
+
+    private final Set<String> statuses;
+
+    private final boolean failures;
+
+    private final boolean slower;
+
+    private final String prefix;
+
+    private final double minTime;
+
+    private final String sort;
+
+    private final int start;
+
+    private final int limit;
+
+    public ResultsQuery( String status, String prefix, int start, int limit )
+    {
+        this( status, prefix, 0, null, start, limit );
+    }
+
+    public ResultsQuery( String status, String prefix, double minTime, String sort, int start, int limit )
+    {
+        this.minTime = Math.max( 0, minTime );
+        this.sort = comparator( sort ) == null ? null : sort;
+        Set<String> values = new HashSet<>( Arrays.asList( StringUtils.split( StringUtils.defaultString( status ),
+                                                                              ',' ) ) );
+        this.failures = values.remove( FAILURES );
+        this.slower = values.remove( SLOWER );
+        this.statuses = values;
+        this.prefix = StringUtils.trimToNull( prefix );
+        this.start = Math.max( 0, start );
+        this.limit = limit < 0 ? DEFAULT_LIMIT : Math.min( limit, MAX_LIMIT );
+    }
+
+    public static ResultsQuery from( StaplerRequest request )
+    {
+        return from( request, null );
+    }
+
+    /**
+     * @param defaultSort the sort when the request has no <code>sort</code> parameter
+     */
+    public static ResultsQuery from( StaplerRequest request, String defaultSort )
+    {
+        String sort = request.getParameter( "sort" );
+        return new ResultsQuery( request.getParameter( "status" ), request.getParameter( "prefix" ),
+                                 NumberUtils.toDouble( request.getParameter( "minTime" ), 0 ),
+                                 sort == null ? defaultSort : sort,
+                                 NumberUtils.toInt( request.getParameter( "start" ), 0 ),
+                                 NumberUtils.toInt( request.getParameter( "limit" ), DEFAULT_LIMIT ) );
+    }
+
+    /**
+     * @return the order of a sort, <code>null</code> for the recording order
+     */
+    @CheckForNull
+    static Comparator<InvokerResult> comparator( String sort )
+    {
+        if ( sort == null )
+        {
+            return null;
+        }
+        switch ( sort )
+        {
+            case SORT_FAILURES:
+                return Comparator.comparingInt( ResultsQuery::failureRank ).thenComparing( BY_PROJECT );
+            case SORT_PROJECT:
+                return BY_PROJECT;
+            case SORT_RESULT:
+                return Comparator.comparing( ( InvokerResult r ) -> r.result,
+                                             Comparator.nullsLast( Comparator.naturalOrder() ) ) //
+                    .thenComparing( BY_PROJECT );
+            case SORT_TIME:
+                return Comparator.comparingDouble( ( InvokerResult r ) -> r.time ).reversed() //
+                    .thenComparing( BY_PROJECT );
+            default:
+                return null;
+        }
+    }
+
+    private static int failureRank( InvokerResult invokerResult )
+    {
+        if ( isFailure( invokerResult ) )
+        {
+            return 0;
+        }
+        return StringUtils.equals( invokerResult.result, BuildJob.Result.SKIPPED ) ? 1 : 2;
+    }
+
+    /**
+     * @return the page of the results selected by this query, the results are filtered but only the page is kept
+     */
+    public ResultsPage select( MavenInvokerResults mavenInvokerResults )
+    {
+        List<InvokerResult> sorted = mavenInvokerResults.getSortedResults( sort );
+        int end = getEnd();
+        List<InvokerResult> page = new ArrayList<>( Math.min( limit, sorted.size() ) );
+        if ( isUnfiltered() )
+        {
+            page.addAll( sorted.subList( Math.min( start, sorted.size() ), Math.min( end, sorted.size() ) ) );
+            return new ResultsPage( this, page, sorted.size() );
+        }
+        int matched = 0;
+        for ( InvokerResult invokerResult : sorted )
+        {
+            if ( matches( invokerResult ) )
+            {
+                if ( matched >= start && matched < end )
+                {
+                    page.add( invokerResult );
+                }
+                matched++;
+            }
+        }
+        return new ResultsPage( this, page, matched );
+    }
+
+    /**
+     * @return <code>true</code> if every result is kept
+     */
+    public boolean isUnfiltered()
+    {
+        return !failures && !slower && statuses.isEmpty() && prefix == null && minTime <= 0;
+    }
+
+    public boolean matches( InvokerResult invokerResult )
+    {
+        if ( failures || slower || !statuses.isEmpty() )
+        {
+            boolean kept = statuses.contains( invokerResult.result ) || failures && isFailure( invokerResult )
+                || slower && invokerResult.isSlower();
+            if ( !kept )
+            {
+                return false;
+            }
+        }
+        if ( invokerResult.time < minTime )
+        {
+            return false;
+        }
+        return prefix == null || StringUtils.startsWith( invokerResult.name, prefix )
+            || StringUtils.startsWith( invokerResult.project, prefix );
+    }
+
+    public static boolean isFailure( InvokerResult invokerResult )
+    {
+        return !StringUtils.equals( invokerResult.result, BuildJob.Result.SUCCESS )
+            && !StringUtils.equals( invokerResult.result, BuildJob.Result.SKIPPED );
+    }
+
+    /**
+     * @return the parameters of this query with another sort and start, to link to other pages
+     */
+    public String toQueryString( String sort, int start )
+    {
+        StringBuilder query = new StringBuilder();
+        append( query, "status", getStatus() );
+        append( query, "prefix", prefix );
+        append( query, "minTime", minTime > 0 ? String.valueOf( minTime ) : null );
+        append( query, "sort", sort );
+        append( query, "start", String.valueOf( start ) );
+        append( query, "limit", String.valueOf( limit ) );
+        return query.toString();
+    }
+
+    private static void append( StringBuilder query, String name, String value )
+    {
+        if ( StringUtils.isEmpty( value ) )
+        {
+            return;
+        }
+        try
+        {
+            query.append( query.length() == 0 ? "" : "&" ).append( name ).append( '=' ) //
+                .append( URLEncoder.encode( value, "UTF-8" ) );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    public String getStatus()
+    {
+        Set<String> values = new HashSet<>( statuses );
+        if ( failures )
+        {
+            values.add( FAILURES );
+        }
+        if ( slower )
+        {
+            values.add( SLOWER );
+        }
+        return StringUtils.join( values, ',' );
+    }
+
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+    public double getMinTime()
+    {
+        return minTime;
+    }
+
+    @CheckForNull
+    public String getSort()
+    {
+        return sort;
+    }
+
+    public int getStart()
+    {
+        return start;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * @return the index after the window, not overflowing whatever the requested start
+     */
+    public int getEnd()
+    {
+        return (int) Math.min( (long) start + limit, Integer.MAX_VALUE );
+    }
+}
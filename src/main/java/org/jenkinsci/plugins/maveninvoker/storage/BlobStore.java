@@ -0,0 +1,589 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Per job store of the reports and compressed logs shared by several builds, each stored once and named after
+ * the hash of its content. A {@link ReportsArchive} holds a reference entry, ending with {@link #REFERENCE_SUFFIX}
+ * and holding the name of the blob, instead of the content. The references of each blob are counted in a journal,
+ * a blob is deleted with the last build referencing it. The name of a blob is the SHA-256 of its uncompressed content
+ * followed by <code>.xml</code> for a report or by the {@link LogCodec#getSuffix() suffix} of its codec for a log.
+ */
+public class BlobStore
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger( BlobStore.class );
+
+    public static final String DIRECTORY = "maven-invoker-blobs";
+
+    /**
+     * Suffix of the entries of an archive referencing a blob.
+     */
+    public static final String REFERENCE_SUFFIX = ".blob";
+
+    /**
+     * Prefix of the entries of an archive holding a new blob, moved to the store once the archive is received.
+     */
+    public static final String BLOB_ENTRY_PREFIX = "blobs/";
+
+    private static final String JOURNAL_NAME = "references";
+
+    private static final int MAGIC = 0x4D494253;
+
+    private static final Map<String, BlobStore> STORES = new ConcurrentHashMap<>();
+
+    private final File directory;
+
+    /**
+     * Number of references of each blob. Guarded by this.
+     */
+    private final Map<String, Integer> references = new HashMap<>();
+
+    /**
+     * Number of records in the journal, to know when compacting it is worth it. Guarded by this.
+     */
+    private int records;
+
+    private BlobStore( File directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the store of a job, <code>null</code> if nothing has been stored for it
+     */
+    @CheckForNull
+    public static BlobStore get( Job<?, ?> job )
+    {
+        File directory = new File( job.getRootDir(), DIRECTORY );
+        BlobStore store = STORES.get( directory.getPath() );
+        if ( store == null && directory.isDirectory() )
+        {
+            store = forJob( job );
+        }
+        return store;
+    }
+
+    /**
+     * @return the store of a job, created if needed
+     */
+    public static BlobStore forJob( Job<?, ?> job )
+    {
+        File directory = new File( job.getRootDir(), DIRECTORY );
+        return STORES.computeIfAbsent( directory.getPath(), path -> load( directory ) );
+    }
+
+    static BlobStore load( File directory )
+    {
+        BlobStore store = new BlobStore( directory );
+        store.load();
+        return store;
+    }
+
+    private synchronized void load()
+    {
+        File journal = new File( directory, JOURNAL_NAME );
+        if ( !journal.isFile() )
+        {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( journal ) ) ))
+        {
+            if ( in.readInt() != MAGIC )
+            {
+                LOGGER.warn( "ignore invalid journal {}", journal );
+                return;
+            }
+            while ( true )
+            {
+                int delta;
+                try
+                {
+                    delta = in.readInt();
+                }
+                catch ( EOFException e )
+                {
+                    break;
+                }
+                String name = in.readUTF();
+                references.merge( name, delta, Integer::sum );
+                references.remove( name, 0 );
+                records++;
+            }
+        }
+        catch ( EOFException e )
+        {
+            LOGGER.warn( "truncated journal {}", journal );
+        }
+        catch ( IOException e )
+        {
+            LOGGER.warn( "cannot read journal {}", journal, e );
+        }
+    }
+
+    /**
+     * @return the names among the given ones of the blobs stored, asked by the agent for each report so it only
+     * sends references to them
+     */
+    public synchronized Set<String> stored( Collection<String> names )
+    {
+        Set<String> stored = new HashSet<>( names );
+        stored.retainAll( references.keySet() );
+        return stored;
+    }
+
+    /**
+     * @return the content of a blob, <code>null</code> if it is not stored
+     */
+    @CheckForNull
+    public InputStream open( String name )
+        throws IOException
+    {
+        File blob = file( name );
+        return blob.isFile() ? new FileInputStream( blob ) : null;
+    }
+
+    private File file( String name )
+    {
+        if ( name.length() < 2 || name.contains( "/" ) || name.contains( "\\" ) || name.startsWith( "." ) )
+        {
+            throw new IllegalArgumentException( "invalid blob name " + name );
+        }
+        return new File( new File( directory, name.substring( 0, 2 ) ), name );
+    }
+
+    /**
+     * Moves the new blobs of an archive received from the agent to the store and counts its references.
+     * The archive is only rewritten if it holds new blobs.
+     *
+     * @throws MissingBlobsException if a blob only referenced by the archive was released since the agent asked
+     * for it, nothing is stored
+     * @throws IOException if a new blob does not match its name, nothing is stored
+     */
+    public synchronized void ingest( ReportsArchive archive )
+        throws IOException
+    {
+        List<String> referenced = new ArrayList<>();
+        Set<String> received = new HashSet<>();
+        List<String> created = new ArrayList<>();
+        boolean stored = false;
+        try
+        {
+            try (ZipFile zipFile = archive.open())
+            {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while ( entries.hasMoreElements() )
+                {
+                    ZipEntry entry = entries.nextElement();
+                    if ( entry.getName().startsWith( BLOB_ENTRY_PREFIX ) )
+                    {
+                        received.add( entry.getName().substring( BLOB_ENTRY_PREFIX.length() ) );
+                    }
+                    else if ( entry.getName().endsWith( REFERENCE_SUFFIX ) )
+                    {
+                        referenced.add( readReference( zipFile, entry ) );
+                    }
+                }
+                List<String> missing = new ArrayList<>();
+                for ( String name : referenced )
+                {
+                    if ( !received.contains( name ) && !file( name ).isFile() )
+                    {
+                        missing.add( name );
+                    }
+                }
+                if ( !missing.isEmpty() )
+                {
+                    throw new MissingBlobsException( missing );
+                }
+                for ( String name : received )
+                {
+                    File blob = file( name );
+                    // a blob nothing references would never be released
+                    if ( !blob.isFile() && referenced.contains( name ) )
+                    {
+                        store( zipFile, zipFile.getEntry( BLOB_ENTRY_PREFIX + name ), name, blob );
+                        created.add( name );
+                    }
+                }
+                if ( !received.isEmpty() )
+                {
+                    rewriteWithoutBlobs( archive, zipFile );
+                }
+            }
+            if ( !received.isEmpty() )
+            {
+                Files.move( new File( archive.getFile().getPath() + ".tmp" ).toPath(), archive.getFile().toPath(),
+                            StandardCopyOption.REPLACE_EXISTING );
+            }
+            stored = true;
+            update( referenced, 1 );
+        }
+        finally
+        {
+            if ( !stored )
+            {
+                // not referenced by anything
+                for ( String name : created )
+                {
+                    Files.deleteIfExists( file( name ).toPath() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a new blob to the store, hashing its uncompressed content on the way as the agent did to name it.
+     *
+     * @throws IOException if the content does not match the name
+     */
+    private static void store( ZipFile zipFile, ZipEntry entry, String name, File blob )
+        throws IOException
+    {
+        Files.createDirectories( blob.getParentFile().toPath() );
+        File tmp = new File( blob.getPath() + ".tmp" );
+        String suffix = name.substring( Math.max( 0, name.indexOf( '.' ) ) );
+        MessageDigest digest = sha256();
+        try
+        {
+            try (InputStream in = zipFile.getInputStream( entry );
+                 OutputStream out = new BufferedOutputStream( new FileOutputStream( tmp ) ))
+            {
+                InputStream copy = new TeeInputStream( in, out );
+                if ( ".xml".equals( suffix ) )
+                {
+                    digest( copy, digest );
+                }
+                else
+                {
+                    InputStream content = codec( name, suffix ).decompress( copy, null );
+                    try
+                    {
+                        if ( content != null )
+                        {
+                            digest( content, digest );
+                        }
+                        // the end of the compressed data, such as the directory of a zip
+                        IOUtils.copy( copy, NullOutputStream.NULL_OUTPUT_STREAM );
+                    }
+                    finally
+                    {
+                        IOUtils.closeQuietly( content );
+                    }
+                }
+            }
+            if ( !name.equals( Util.toHexString( digest.digest() ) + suffix ) )
+            {
+                throw new IOException( "blob " + name + " does not match its content" );
+            }
+            Files.move( tmp.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally
+        {
+            Files.deleteIfExists( tmp.toPath() );
+        }
+    }
+
+    private static LogCodec codec( String name, String suffix )
+        throws IOException
+    {
+        for ( LogCodec codec : LogCodec.values() )
+        {
+            // the logs compressed with the dictionary of a recording are never shared
+            if ( codec != LogCodec.DICTIONARY && codec.getSuffix().equals( suffix ) )
+            {
+                return codec;
+            }
+        }
+        throw new IOException( "unexpected blob " + name );
+    }
+
+    private static void digest( InputStream in, MessageDigest digest )
+        throws IOException
+    {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ( ( read = in.read( buffer ) ) > 0 )
+        {
+            digest.update( buffer, 0, read );
+        }
+    }
+
+    private static MessageDigest sha256()
+        throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IOException( e );
+        }
+    }
+
+    private static void rewriteWithoutBlobs( ReportsArchive archive, ZipFile zipFile )
+        throws IOException
+    {
+        try (ZipOutputStream zip = new ZipOutputStream(
+            new BufferedOutputStream( new FileOutputStream( archive.getFile().getPath() + ".tmp" ) ) ))
+        {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while ( entries.hasMoreElements() )
+            {
+                ZipEntry entry = entries.nextElement();
+                if ( entry.getName().startsWith( BLOB_ENTRY_PREFIX ) )
+                {
+                    continue;
+                }
+                ZipEntry copy = new ZipEntry( entry );
+                if ( copy.getMethod() == ZipEntry.DEFLATED )
+                {
+                    copy.setCompressedSize( -1 );
+                }
+                zip.putNextEntry( copy );
+                try (InputStream in = zipFile.getInputStream( entry ))
+                {
+                    IOUtils.copy( in, zip );
+                }
+                zip.closeEntry();
+            }
+        }
+    }
+
+    static String readReference( ZipFile zipFile, ZipEntry entry )
+        throws IOException
+    {
+        try (InputStream in = zipFile.getInputStream( entry ))
+        {
+            return IOUtils.toString( in, StandardCharsets.UTF_8 ).trim();
+        }
+    }
+
+    /**
+     * Drops the references of the archives of a build, deleting the blobs no longer referenced.
+     */
+    public synchronized void release( File storageDirectory )
+        throws IOException
+    {
+        List<String> referenced = new ArrayList<>();
+        for ( ReportsArchive archive : ReportsArchive.list( storageDirectory ) )
+        {
+            try (ZipFile zipFile = archive.open())
+            {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while ( entries.hasMoreElements() )
+                {
+                    ZipEntry entry = entries.nextElement();
+                    if ( entry.getName().endsWith( REFERENCE_SUFFIX ) )
+                    {
+                        referenced.add( readReference( zipFile, entry ) );
+                    }
+                }
+            }
+        }
+        update( referenced, -1 );
+    }
+
+    private void update( List<String> names, int delta )
+        throws IOException
+    {
+        if ( names.isEmpty() )
+        {
+            return;
+        }
+        for ( String name : names )
+        {
+            int count = references.merge( name, delta, Integer::sum );
+            if ( count <= 0 )
+            {
+                references.remove( name );
+                Files.deleteIfExists( file( name ).toPath() );
+            }
+        }
+        if ( records > 2 * references.size() + 1024 )
+        {
+            compact();
+            return;
+        }
+        File journal = new File( directory, JOURNAL_NAME );
+        boolean created = !journal.exists() || journal.length() == 0;
+        Files.createDirectories( directory.toPath() );
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream( new FileOutputStream( journal, true ) ) ))
+        {
+            if ( created )
+            {
+                out.writeInt( MAGIC );
+            }
+            for ( String name : names )
+            {
+                out.writeInt( delta );
+                out.writeUTF( name );
+            }
+        }
+        records += names.size();
+    }
+
+    /**
+     * Rewrites the journal with the count of each blob.
+     */
+    private void compact()
+        throws IOException
+    {
+        File journal = new File( directory, JOURNAL_NAME );
+        File tmp = new File( journal.getPath() + ".tmp" );
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) ))
+        {
+            out.writeInt( MAGIC );
+            for ( Map.Entry<String, Integer> entry : references.entrySet() )
+            {
+                out.writeInt( entry.getValue() );
+                out.writeUTF( entry.getKey() );
+            }
+        }
+        Files.move( tmp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        records = references.size();
+    }
+
+    /**
+     * Asks the controller which of the blobs hashed by the agent are stored, once per report, so the names of the
+     * whole store are never sent to the agent.
+     */
+    public interface Index
+    {
+        /**
+         * @see BlobStore#stored(Collection)
+         */
+        Set<String> stored( Collection<String> names )
+            throws IOException;
+    }
+
+    /**
+     * Thrown when an archive references blobs released by the deletion of a build since the agent asked for them.
+     * Collecting the reports again sends them.
+     */
+    public static final class MissingBlobsException
+        extends IOException
+    {
+        private final List<String> names;
+
+        MissingBlobsException( List<String> names )
+        {
+            super( "blobs no longer stored: " + names );
+            this.names = Collections.unmodifiableList( names );
+        }
+
+        public List<String> getNames()
+        {
+            return names;
+        }
+    }
+
+    /**
+     * Releases the blobs of the deleted builds, whether deleted by hand or by the rotation of the builds.
+     */
+    @Extension
+    public static final class RunListenerImpl
+        extends RunListener<Run<?, ?>>
+    {
+        @Override
+        public void onDeleted( Run<?, ?> run )
+        {
+            BlobStore store = get( run.getParent() );
+            if ( store != null )
+            {
+                try
+                {
+                    store.release( new File( run.getRootDir(), MavenInvokerRecorder.STORAGE_DIRECTORY ) );
+                }
+                catch ( IOException e )
+                {
+                    LOGGER.warn( "cannot release the blobs of {}", run, e );
+                }
+            }
+        }
+    }
+
+    @Extension
+    public static final class ItemListenerImpl
+        extends ItemListener
+    {
+        @Override
+        public void onDeleted( Item item )
+        {
+            if ( item instanceof Job )
+            {
+                STORES.remove( new File( item.getRootDir(), DIRECTORY ).getPath() );
+            }
+        }
+
+        @Override
+        public void onLocationChanged( Item item, String oldFullName, String newFullName )
+        {
+            // the previous location is unknown, the journals are cheap to read again
+            STORES.clear();
+        }
+    }
+}
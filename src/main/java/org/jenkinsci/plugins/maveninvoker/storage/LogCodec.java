@@ -0,0 +1,192 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * How each log is compressed in a {@link ReportsArchive}. The codec of a log is told by the suffix of its entry,
+ * so archives written with any codec, or by previous versions, are read the same way.
+ */
+public enum LogCodec
+{
+    /**
+     * A zip holding the log as its single entry, as {@link hudson.FilePath#zip(hudson.FilePath)} does.
+     */
+    ZIP( ".zip" )
+        {
+            @Override
+            public OutputStream compress( OutputStream out, String name, int level, byte[] dictionary )
+                throws IOException
+            {
+                ZipOutputStream zip = new ZipOutputStream( out );
+                zip.setLevel( level );
+                zip.putNextEntry( new ZipEntry( name ) );
+                return zip;
+            }
+
+            @Override
+            InputStream decompress( InputStream in, byte[] dictionary )
+                throws IOException
+            {
+                ZipInputStream zipInputStream = new ZipInputStream( in );
+                if ( zipInputStream.getNextEntry() == null )
+                {
+                    zipInputStream.close();
+                    return null;
+                }
+                return zipInputStream;
+            }
+        },
+
+    /**
+     * A gzip stream, without the headers of a zip.
+     */
+    GZIP( ".gz" )
+        {
+            @Override
+            public OutputStream compress( OutputStream out, String name, int level, byte[] dictionary )
+                throws IOException
+            {
+                return new GZIPOutputStream( out )
+                {
+                    {
+                        def.setLevel( level );
+                    }
+                };
+            }
+
+            @Override
+            InputStream decompress( InputStream in, byte[] dictionary )
+                throws IOException
+            {
+                return new GZIPInputStream( in );
+            }
+        },
+
+    /**
+     * A raw deflate stream primed with a dictionary shared by all the logs of the archive, so the lines every IT
+     * logs are not compressed again in each log.
+     */
+    DICTIONARY( ".deflate" )
+        {
+            @Override
+            public OutputStream compress( OutputStream out, String name, int level, byte[] dictionary )
+            {
+                final Deflater deflater = new Deflater( level, true );
+                if ( dictionary != null )
+                {
+                    deflater.setDictionary( dictionary );
+                }
+                return new DeflaterOutputStream( out, deflater )
+                {
+                    @Override
+                    public void close()
+                        throws IOException
+                    {
+                        try
+                        {
+                            super.close();
+                        }
+                        finally
+                        {
+                            deflater.end();
+                        }
+                    }
+                };
+            }
+
+            @Override
+            InputStream decompress( InputStream in, byte[] dictionary )
+            {
+                final Inflater inflater = new Inflater( true );
+                if ( dictionary != null )
+                {
+                    inflater.setDictionary( dictionary );
+                }
+                return new InflaterInputStream( in, inflater )
+                {
+                    @Override
+                    public void close()
+                        throws IOException
+                    {
+                        try
+                        {
+                            super.close();
+                        }
+                        finally
+                        {
+                            inflater.end();
+                        }
+                    }
+                };
+            }
+        };
+
+    /**
+     * Entry of the archive holding the dictionary of {@link #DICTIONARY}.
+     */
+    public static final String DICTIONARY_ENTRY_NAME = "logs.dictionary";
+
+    private final String suffix;
+
+    LogCodec( String suffix )
+    {
+        this.suffix = suffix;
+    }
+
+    /**
+     * @return the suffix added to the name of a log compressed with this codec
+     */
+    public String getSuffix()
+    {
+        return suffix;
+    }
+
+    /**
+     * @param name name of the log, kept by codecs storing it
+     * @param level compression level, see {@link Deflater#setLevel(int)}
+     * @param dictionary dictionary of the archive, <code>null</code> if none
+     * @return the stream to write the log to, closing it completes the compressed data
+     */
+    public abstract OutputStream compress( OutputStream out, String name, int level,
+                                           @CheckForNull byte[] dictionary )
+        throws IOException;
+
+    /**
+     * @return the uncompressed log, <code>null</code> if empty
+     */
+    @CheckForNull
+    abstract InputStream decompress( InputStream in, @CheckForNull byte[] dictionary )
+        throws IOException;
+}
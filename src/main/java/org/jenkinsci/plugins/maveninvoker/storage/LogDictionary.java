@@ -0,0 +1,116 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trains the dictionary of {@link LogCodec#DICTIONARY} from samples of the logs of a recording. The lines found
+ * in several samples are kept, the ones saving the most bytes last since deflate reaches the end of the dictionary
+ * with the shortest distances.
+ */
+public final class LogDictionary
+{
+    /**
+     * Deflate only looks this far back, a longer dictionary would be wasted.
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+
+    /**
+     * Shorter lines cost about as much to match as to copy.
+     */
+    private static final int MIN_LINE_LENGTH = 8;
+
+    private LogDictionary()
+    {
+        // no op
+    }
+
+    /**
+     * @return the dictionary, <code>null</code> if the samples share no line
+     */
+    @CheckForNull
+    public static byte[] train( List<byte[]> samples )
+    {
+        Map<ByteBuffer, int[]> counts = new HashMap<>();
+        for ( byte[] sample : samples )
+        {
+            int start = 0;
+            for ( int i = 0; i <= sample.length; i++ )
+            {
+                if ( i == sample.length || sample[i] == '\n' )
+                {
+                    int end = Math.min( i + 1, sample.length );
+                    if ( end - start >= MIN_LINE_LENGTH && i < sample.length )
+                    {
+                        // the new line is kept, it is part of what repeats
+                        counts.computeIfAbsent( ByteBuffer.wrap( sample, start, end - start ).slice(),
+                                                line -> new int[1] )[0]++;
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        List<Map.Entry<ByteBuffer, int[]>> repeated = new ArrayList<>();
+        for ( Map.Entry<ByteBuffer, int[]> entry : counts.entrySet() )
+        {
+            if ( entry.getValue()[0] > 1 )
+            {
+                repeated.add( entry );
+            }
+        }
+        if ( repeated.isEmpty() )
+        {
+            return null;
+        }
+        // the most bytes saved first
+        repeated.sort( ( a, b ) -> Long.compare( saved( b ), saved( a ) ) );
+        List<ByteBuffer> kept = new ArrayList<>();
+        int size = 0;
+        for ( Map.Entry<ByteBuffer, int[]> entry : repeated )
+        {
+            int length = entry.getKey().remaining();
+            if ( size + length <= MAX_SIZE )
+            {
+                kept.add( entry.getKey() );
+                size += length;
+            }
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream( size );
+        for ( int i = kept.size() - 1; i >= 0; i-- )
+        {
+            ByteBuffer line = kept.get( i );
+            dictionary.write( line.array(), line.arrayOffset() + line.position(), line.remaining() );
+        }
+        return dictionary.toByteArray();
+    }
+
+    private static long saved( Map.Entry<ByteBuffer, int[]> entry )
+    {
+        return (long) entry.getKey().remaining() * entry.getValue()[0];
+    }
+}
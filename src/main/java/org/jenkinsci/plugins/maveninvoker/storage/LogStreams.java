@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads parts of a log stream using a constant amount of memory whatever the size of the log.
+ */
+public final class LogStreams
+{
+    /**
+     * Longer lines are truncated when computing a tail.
+     */
+    public static final int MAX_LINE_LENGTH = 8192;
+
+    private LogStreams()
+    {
+        // no op
+    }
+
+    /**
+     * Copies at most <code>length</code> bytes starting at <code>start</code>.
+     *
+     * @param length maximum number of bytes to copy, negative to copy until the end of the stream
+     * @return the number of bytes copied
+     */
+    public static long copyRange( InputStream in, OutputStream out, long start, long length )
+        throws IOException
+    {
+        if ( IOUtils.skip( in, start ) < start )
+        {
+            return 0;
+        }
+        return IOUtils.copyLarge( in, out, 0, length );
+    }
+
+    /**
+     * @return the last <code>lines</code> lines of the stream
+     */
+    public static String tail( InputStream in, Charset charset, int lines )
+        throws IOException
+    {
+        Deque<String> tail = new ArrayDeque<>( lines );
+        Reader reader = new InputStreamReader( in, charset );
+        StringBuilder line = new StringBuilder();
+        char[] buffer = new char[IOUtils.DEFAULT_BUFFER_SIZE];
+        int read;
+        while ( ( read = reader.read( buffer ) ) != -1 )
+        {
+            for ( int i = 0; i < read; i++ )
+            {
+                char c = buffer[i];
+                if ( c == '\n' )
+                {
+                    add( tail, line, lines );
+                }
+                else if ( line.length() < MAX_LINE_LENGTH )
+                {
+                    line.append( c );
+                }
+            }
+        }
+        if ( line.length() > 0 )
+        {
+            add( tail, line, lines );
+        }
+        return String.join( "\n", tail );
+    }
+
+    private static void add( Deque<String> tail, StringBuilder line, int lines )
+    {
+        if ( line.length() > 0 && line.charAt( line.length() - 1 ) == '\r' )
+        {
+            line.setLength( line.length() - 1 );
+        }
+        if ( lines > 0 )
+        {
+            if ( tail.size() == lines )
+            {
+                tail.removeFirst();
+            }
+            tail.addLast( line.toString() );
+        }
+        line.setLength( 0 );
+    }
+}
@@ -0,0 +1,315 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * All the reports and logs of one recording stored in a single zip file, its central directory being the index.
+ * Each project has a directory holding its <code>maven-invoker-result.xml</code> report and its compressed logs.
+ */
+public class ReportsArchive
+{
+    public static final String REPORT_ENTRY_NAME = "maven-invoker-result.xml";
+
+    private static final String PREFIX = "recording-";
+
+    private static final String EXTENSION = ".zip";
+
+    private final File file;
+
+    /**
+     * Store of the blobs referenced by the archive, <code>null</code> if the job has none.
+     */
+    private final BlobStore blobStore;
+
+    public ReportsArchive( File file )
+    {
+        this( file, null );
+    }
+
+    public ReportsArchive( File file, @CheckForNull BlobStore blobStore )
+    {
+        this.file = file;
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Creates a new empty archive in the storage directory, concurrent recordings never get the same file.
+     */
+    public static ReportsArchive create( File storageDirectory )
+        throws IOException
+    {
+        Files.createDirectories( storageDirectory.toPath() );
+        for ( int i = 1; ; i++ )
+        {
+            try
+            {
+                return new ReportsArchive(
+                    Files.createFile( new File( storageDirectory, PREFIX + i + EXTENSION ).toPath() ).toFile() );
+            }
+            catch ( FileAlreadyExistsException e )
+            {
+                // try the next one
+            }
+        }
+    }
+
+    /**
+     * @return the archives of a build in recording order
+     */
+    public static List<ReportsArchive> list( File storageDirectory )
+    {
+        return list( storageDirectory, null );
+    }
+
+    /**
+     * @param blobStore store of the blobs referenced by the archives, <code>null</code> if the job has none
+     * @return the archives of a build in recording order
+     */
+    public static List<ReportsArchive> list( File storageDirectory, @CheckForNull BlobStore blobStore )
+    {
+        File[] files = storageDirectory.listFiles(
+            ( dir, name ) -> name.startsWith( PREFIX ) && name.endsWith( EXTENSION ) );
+        if ( files == null )
+        {
+            return new ArrayList<>();
+        }
+        Arrays.sort( files, Comparator.comparingInt( ReportsArchive::index ) );
+        List<ReportsArchive> archives = new ArrayList<>( files.length );
+        for ( File f : files )
+        {
+            archives.add( new ReportsArchive( f, blobStore ) );
+        }
+        return archives;
+    }
+
+    private static int index( File file )
+    {
+        try
+        {
+            return Integer.parseInt( StringUtils.substringBetween( file.getName(), PREFIX, EXTENSION ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public String getName()
+    {
+        return file.getName();
+    }
+
+    public ZipFile open()
+        throws IOException
+    {
+        return new ZipFile( file );
+    }
+
+    /**
+     * @return the names of the reports held by the archive or referenced in its blob store
+     */
+    public Set<String> getReportEntryNames()
+        throws IOException
+    {
+        Set<String> names = new HashSet<>();
+        try (ZipFile zipFile = open())
+        {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while ( entries.hasMoreElements() )
+            {
+                String name = StringUtils.removeEnd( entries.nextElement().getName(), BlobStore.REFERENCE_SUFFIX );
+                if ( name.endsWith( REPORT_ENTRY_NAME ) )
+                {
+                    names.add( name );
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Opens the content of an entry, closing the returned stream closes the archive.
+     *
+     * @return <code>null</code> if there is no such entry
+     */
+    @CheckForNull
+    public InputStream openEntry( String name )
+        throws IOException
+    {
+        ZipFile zipFile = open();
+        try
+        {
+            InputStream inputStream = open( zipFile, name );
+            if ( inputStream == null )
+            {
+                zipFile.close();
+            }
+            return inputStream;
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            zipFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the archive holds an entry or a reference to it
+     */
+    private static boolean contains( ZipFile zipFile, String name )
+    {
+        return zipFile.getEntry( name ) != null || zipFile.getEntry( name + BlobStore.REFERENCE_SUFFIX ) != null;
+    }
+
+    /**
+     * Opens an entry held by the archive or a blob it references. The returned stream closes the archive, which is
+     * left open if there is no such entry.
+     */
+    @CheckForNull
+    private InputStream open( ZipFile zipFile, String name )
+        throws IOException
+    {
+        ZipEntry entry = zipFile.getEntry( name );
+        if ( entry != null )
+        {
+            return closing( zipFile, zipFile.getInputStream( entry ) );
+        }
+        ZipEntry reference = zipFile.getEntry( name + BlobStore.REFERENCE_SUFFIX );
+        if ( reference == null || blobStore == null )
+        {
+            return null;
+        }
+        String blob = BlobStore.readReference( zipFile, reference );
+        InputStream inputStream = blobStore.open( blob );
+        if ( inputStream == null )
+        {
+            return null;
+        }
+        zipFile.close();
+        return inputStream;
+    }
+
+    private static InputStream closing( final ZipFile zipFile, InputStream inputStream )
+    {
+        return new FilterInputStream( inputStream )
+        {
+            @Override
+            public void close()
+                throws IOException
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    zipFile.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Opens the uncompressed content of a log, whatever the {@link LogCodec} it has been stored with.
+     *
+     * @param name name of the log stored as a single entry zip, the name of the log with the other codecs
+     * only differs by its suffix
+     * @return <code>null</code> if there is no such log
+     */
+    @CheckForNull
+    public InputStream openLog( String name )
+        throws IOException
+    {
+        String baseName = StringUtils.removeEnd( name, LogCodec.ZIP.getSuffix() );
+        ZipFile zipFile = open();
+        try
+        {
+            for ( LogCodec codec : LogCodec.values() )
+            {
+                String entryName = baseName + codec.getSuffix();
+                if ( contains( zipFile, entryName ) )
+                {
+                    byte[] dictionary = codec == LogCodec.DICTIONARY ? readDictionary( zipFile ) : null;
+                    InputStream inputStream = open( zipFile, entryName );
+                    if ( inputStream == null )
+                    {
+                        // a blob deleted meanwhile
+                        break;
+                    }
+                    // closing the log, or an empty log, closes the archive
+                    return codec.decompress( inputStream, dictionary );
+                }
+            }
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            zipFile.close();
+            throw e;
+        }
+        zipFile.close();
+        return null;
+    }
+
+    @CheckForNull
+    private static byte[] readDictionary( ZipFile zipFile )
+        throws IOException
+    {
+        ZipEntry entry = zipFile.getEntry( LogCodec.DICTIONARY_ENTRY_NAME );
+        if ( entry == null )
+        {
+            return null;
+        }
+        try (InputStream inputStream = zipFile.getInputStream( entry ))
+        {
+            return IOUtils.toByteArray( inputStream );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return file.toString();
+    }
+}
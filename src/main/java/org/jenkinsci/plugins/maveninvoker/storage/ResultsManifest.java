@@ -0,0 +1,243 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import org.apache.commons.io.input.CountingInputStream;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact summary of every IT recorded in a build: project, name, result, time and where the report and log
+ * are stored. It is appended at each recording, so loading the results of a build is one sequential read.
+ */
+public final class ResultsManifest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger( ResultsManifest.class );
+
+    public static final String FILE_NAME = "results.manifest";
+
+    private static final int MAGIC = 0x4D494E56;
+
+    /**
+     * Leads each record, so the fields of later versions can be read next to the records already written.
+     */
+    private static final byte RECORD_VERSION = 1;
+
+    private static final byte OTHER_RESULT = -1;
+
+    private ResultsManifest()
+    {
+        // no op
+    }
+
+    /**
+     * Appends results to the manifest of a build, callers must not append concurrently to the same manifest.
+     */
+    public static void append( File storageDirectory, Collection<InvokerResult> invokerResults )
+        throws IOException
+    {
+        Files.createDirectories( storageDirectory.toPath() );
+        File file = new File( storageDirectory, FILE_NAME );
+        if ( file.length() > 0 )
+        {
+            truncatePartialRecord( file );
+        }
+        boolean created = !file.exists() || file.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream( new FileOutputStream( file, true ) ) ))
+        {
+            if ( created )
+            {
+                out.writeInt( MAGIC );
+            }
+            for ( InvokerResult invokerResult : invokerResults )
+            {
+                out.writeByte( RECORD_VERSION );
+                writeString( out, invokerResult.project );
+                writeString( out, invokerResult.name );
+                int code = InvokerResult.resultCode( invokerResult.result );
+                out.writeByte( code < 0 ? OTHER_RESULT : code );
+                if ( code < 0 )
+                {
+                    writeString( out, invokerResult.result );
+                }
+                out.writeDouble( invokerResult.time );
+                writeString( out, invokerResult.archive );
+                writeString( out, invokerResult.logFilename );
+                out.writeDouble( invokerResult.baselineTime );
+            }
+        }
+    }
+
+    /**
+     * @return the results of a build, <code>null</code> if the build has no manifest
+     */
+    @CheckForNull
+    public static List<InvokerResult> read( File storageDirectory )
+    {
+        File file = new File( storageDirectory, FILE_NAME );
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+        List<InvokerResult> invokerResults = new ArrayList<>();
+        try
+        {
+            long complete = read( file, invokerResults );
+            if ( complete < 0 )
+            {
+                LOGGER.warn( "ignore invalid manifest {}", file );
+                return null;
+            }
+            if ( complete < file.length() )
+            {
+                // a recording interrupted while appending, keep the complete records
+                LOGGER.warn( "truncated manifest {}", file );
+            }
+        }
+        catch ( IOException e )
+        {
+            LOGGER.warn( "cannot read manifest {}", file, e );
+            return null;
+        }
+        return invokerResults;
+    }
+
+    /**
+     * Drops the partial record left by a recording interrupted while appending, the records appended after it
+     * could not be read.
+     */
+    private static void truncatePartialRecord( File file )
+        throws IOException
+    {
+        long complete;
+        try
+        {
+            complete = read( file, null );
+        }
+        catch ( IOException e )
+        {
+            LOGGER.warn( "cannot check manifest {}", file, e );
+            return;
+        }
+        if ( complete >= 0 && complete < file.length() )
+        {
+            LOGGER.warn( "drop the partial record at {} of manifest {}", complete, file );
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" ))
+            {
+                randomAccessFile.setLength( complete );
+            }
+        }
+    }
+
+    /**
+     * @param invokerResults where the results read are added, <code>null</code> to only check the records
+     * @return the length of the complete records, <code>-1</code> if the file is not a manifest
+     */
+    private static long read( File file, @CheckForNull List<InvokerResult> invokerResults )
+        throws IOException
+    {
+        // names are often empty or repeated and an archive holds many results, they share one instance
+        Map<String, String> pool = new HashMap<>();
+        CountingInputStream counting =
+            new CountingInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        long complete = 0;
+        try (DataInputStream in = new DataInputStream( counting ))
+        {
+            if ( in.readInt() != MAGIC )
+            {
+                return -1;
+            }
+            complete = counting.getByteCount();
+            int version;
+            while ( ( version = in.read() ) != -1 )
+            {
+                if ( version != RECORD_VERSION )
+                {
+                    throw new IOException( "unsupported record version " + version );
+                }
+                InvokerResult invokerResult = new InvokerResult();
+                invokerResult.project = readString( in );
+                invokerResult.name = share( pool, readString( in ) );
+                byte code = in.readByte();
+                invokerResult.result = code == OTHER_RESULT ? readString( in ) : InvokerResult.result( code );
+                invokerResult.time = in.readDouble();
+                invokerResult.archive = share( pool, readString( in ) );
+                invokerResult.logFilename = readString( in );
+                invokerResult.baselineTime = in.readDouble();
+                complete = counting.getByteCount();
+                if ( invokerResults != null )
+                {
+                    invokerResults.add( invokerResult.compact() );
+                }
+            }
+        }
+        catch ( EOFException e )
+        {
+            // the last record is partial
+        }
+        return complete;
+    }
+
+    private static String share( Map<String, String> pool, String value )
+    {
+        if ( value == null )
+        {
+            return null;
+        }
+        String shared = pool.putIfAbsent( value, value );
+        return shared == null ? value : shared;
+    }
+
+    private static void writeString( DataOutputStream out, String value )
+        throws IOException
+    {
+        out.writeBoolean( value != null );
+        if ( value != null )
+        {
+            out.writeUTF( value );
+        }
+    }
+
+    private static String readString( DataInputStream in )
+        throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import jenkins.benchmark.jmh.BenchmarkFinder;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks annotated with {@link jenkins.benchmark.jmh.JmhBenchmark}, only with
+ * <code>mvn test -Dbenchmark</code>. The scores are written to <code>target/jmh-report.json</code>.
+ */
+public class BenchmarkRunner
+{
+
+    @Test
+    public void runJmhBenchmarks()
+        throws Exception
+    {
+        ChainedOptionsBuilder options = new OptionsBuilder() //
+            .mode( Mode.AverageTime ) //
+            .timeUnit( TimeUnit.MICROSECONDS ) //
+            .warmupIterations( 2 ) //
+            .measurementIterations( 5 ) //
+            .forks( 1 ) //
+            .shouldFailOnError( true ) //
+            .shouldDoGC( true ) //
+            .resultFormat( ResultFormatType.JSON ) //
+            .result( "target/jmh-report.json" );
+        new BenchmarkFinder( getClass() ).findBenchmarks( options );
+        new Runner( options.build() ).run();
+    }
+
+}
@@ -6,6 +6,10 @@ import hudson.model.BuildListener;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Result;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.maveninvoker.history.BuildSummary;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -13,6 +17,13 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.TestBuilder;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MavenInvokerRecorderTest
 {
@@ -45,6 +56,83 @@ public class MavenInvokerRecorderTest
         Assert.assertEquals( 2, mavenInvokerBuildAction.getRunTests());
         Assert.assertEquals( 1, mavenInvokerBuildAction.getPassedTestCount());
         Assert.assertEquals( 1, mavenInvokerBuildAction.getFailCount());
+
+        MavenInvokerProjectAction projectAction = p.getAction( MavenInvokerProjectAction.class );
+        Assert.assertNotNull( projectAction );
+        BuildSummary summary = projectAction.getRecentSummaries().get( 0 );
+        Assert.assertEquals( run.getNumber(), summary.getNumber() );
+        Assert.assertEquals( 1, summary.getPassed() );
+        Assert.assertEquals( 1, summary.getFailed() );
+
+        JSONObject failures = JSONObject.fromObject( j.createWebClient() //
+            .goTo( run.getUrl() + MavenInvokerBuildAction.URL_NAME + "/results?status=failures", "application/json" ) //
+            .getWebResponse().getContentAsString() );
+        Assert.assertEquals( 1, failures.getInt( "total" ) );
+        Assert.assertEquals( "simple-jsp-fail/pom.xml",
+                             failures.getJSONArray( "results" ).getJSONObject( 0 ).getString( "project" ) );
+        Assert.assertFalse( failures.getBoolean( "more" ) );
+
+        RecordingMetrics metrics = mavenInvokerBuildAction.getMetrics();
+        Assert.assertNotNull( metrics );
+        Assert.assertEquals( 1, mavenInvokerBuildAction.getRecordings() );
+        Assert.assertEquals( 2, metrics.getFiles( RecordingMetrics.Phase.PARSE ) );
+        Assert.assertTrue( metrics.getBytes( RecordingMetrics.Phase.PARSE ) > 0 );
+        Assert.assertEquals( 1, metrics.getFiles( RecordingMetrics.Phase.TRANSFER ) );
+        Assert.assertEquals( 2, metrics.getFiles( RecordingMetrics.Phase.STORE ) );
+
+        JSONObject controllerMetrics = JSONObject.fromObject( j.createWebClient() //
+            .goTo( "manage/" + MavenInvokerMetrics.URL_NAME + "/json", "application/json" ) //
+            .getWebResponse().getContentAsString() );
+        Assert.assertTrue( controllerMetrics.getJSONObject( "recordings" ).getLong( "count" ) >= 1 );
+        Assert.assertTrue( controllerMetrics.getJSONObject( "phases" ).getJSONObject( "parse" ).getInt( "files" ) >= 2 );
     }
 
+    @Test
+    public void results_loaded_while_recording_are_counted_once()
+        throws Exception
+    {
+        FreeStyleProject p = j.createFreeStyleProject( "concurrent" );
+        FreeStyleBuild run = j.buildAndAssertSuccess( p );
+        MavenInvokerBuildAction action = new MavenInvokerBuildAction( run );
+        String key = MavenInvokerResultsCache.key( run );
+
+        AtomicBoolean recording = new AtomicBoolean( true );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            // loads racing with the recordings, each missing the cache
+            Future<?> loads = executor.submit( () -> {
+                while ( recording.get() )
+                {
+                    MavenInvokerResultsCache.get().invalidate( key );
+                    action.getMavenInvokerResults();
+                }
+            } );
+            for ( int i = 0; i < 200; i++ )
+            {
+                InvokerResult invokerResult = new InvokerResult();
+                invokerResult.project = "it-" + i + "/pom.xml";
+                invokerResult.name = invokerResult.project;
+                invokerResult.result = "success";
+                MavenInvokerResults results = new MavenInvokerResults();
+                results.getInvokerResults().add( invokerResult );
+                action.record( results );
+            }
+            recording.set( false );
+            loads.get();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        List<InvokerResult> invokerResults = action.getMavenInvokerResults().getInvokerResults();
+        Set<String> projects = new HashSet<>();
+        for ( InvokerResult invokerResult : invokerResults )
+        {
+            projects.add( invokerResult.project );
+        }
+        Assert.assertEquals( 200, projects.size() );
+        Assert.assertEquals( 200, invokerResults.size() );
+    }
 }
@@ -0,0 +1,106 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MavenInvokerResultsCacheTest
+{
+
+    @Test
+    public void evict_least_recently_used()
+    {
+        MavenInvokerResults results = results( "it/pom.xml" );
+        long size = MavenInvokerResultsCache.estimate( results.getInvokerResults() );
+        MavenInvokerResultsCache cache = new MavenInvokerResultsCache( 2 * size );
+
+        cache.put( "a", results );
+        cache.put( "b", results( "it/pom.xml" ) );
+        // a becomes the most recently used
+        cache.get( "a", MavenInvokerResults::new );
+        cache.put( "c", results( "it/pom.xml" ) );
+
+        assertEquals( 2, cache.getSize() );
+        assertEquals( 1, cache.getEvictionCount() );
+        assertSame( results, cache.get( "a", MavenInvokerResults::new ) );
+        assertEquals( 2, cache.getHitCount() );
+    }
+
+    @Test
+    public void single_load_for_concurrent_requests()
+        throws Exception
+    {
+        MavenInvokerResultsCache cache = new MavenInvokerResultsCache( Long.MAX_VALUE );
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            Future<MavenInvokerResults> first = executor.submit( () -> cache.get( "a", () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                try
+                {
+                    release.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return results( "it/pom.xml" );
+            } ) );
+            started.await( 10, TimeUnit.SECONDS );
+            Future<MavenInvokerResults> second = executor.submit( () -> cache.get( "a", () -> {
+                loads.incrementAndGet();
+                return new MavenInvokerResults();
+            } ) );
+            release.countDown();
+
+            assertSame( first.get(), second.get() );
+            assertEquals( 1, loads.get() );
+            assertEquals( 1, cache.getLoadCount() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void append_to_cached_results()
+    {
+        MavenInvokerResultsCache cache = new MavenInvokerResultsCache( Long.MAX_VALUE );
+        cache.put( "a", results( "first/pom.xml" ) );
+        cache.append( "a", Collections.singletonList( result( "second/pom.xml" ) ) );
+
+        assertEquals( 2, cache.get( "a", MavenInvokerResults::new ).getInvokerResults().size() );
+    }
+
+    private static MavenInvokerResults results( String project )
+    {
+        MavenInvokerResults results = new MavenInvokerResults();
+        results.getInvokerResults().add( result( project ) );
+        return results;
+    }
+
+    private static InvokerResult result( String project )
+    {
+        InvokerResult invokerResult = new InvokerResult();
+        invokerResult.project = project;
+        invokerResult.name = project;
+        invokerResult.result = "success";
+        return invokerResult;
+    }
+}
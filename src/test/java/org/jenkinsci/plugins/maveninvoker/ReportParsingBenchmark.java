@@ -0,0 +1,81 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.maven.plugins.invoker.model.io.xpp3.BuildJobXpp3Reader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+/**
+ * Parsing of the reports done on the agent by {@link ReportsCollector}, alone and with the mapping to results.
+ */
+@JmhBenchmark
+public class ReportParsingBenchmark
+{
+
+    @State( Scope.Benchmark )
+    public static class Reports
+    {
+        @Param( { "10", "1000", "10000", "50000" } )
+        public int count;
+
+        List<byte[]> reports;
+
+        @Setup
+        public void setup()
+            throws Exception
+        {
+            reports = SyntheticReports.reports( count );
+        }
+    }
+
+    @Benchmark
+    public void parse( Reports reports, Blackhole blackhole )
+        throws Exception
+    {
+        BuildJobXpp3Reader reader = new BuildJobXpp3Reader();
+        for ( byte[] report : reports.reports )
+        {
+            blackhole.consume( reader.read( new ByteArrayInputStream( report ) ) );
+        }
+    }
+
+    @Benchmark
+    public void parseAndMap( Reports reports, Blackhole blackhole )
+        throws Exception
+    {
+        BuildJobXpp3Reader reader = new BuildJobXpp3Reader();
+        for ( byte[] report : reports.reports )
+        {
+            blackhole.consume( ReportsCollector.map( reader.read( new ByteArrayInputStream( report ) ), null ) );
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+import hudson.remoting.RemoteOutputStream;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.storage.BlobStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReportsCollectorTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void logs_are_paired_with_their_project()
+        throws Exception
+    {
+        File workspace = tmp.getRoot();
+        touch( workspace, "target/its/simple/build.log" );
+        touch( workspace, "target/its/simple/prebuild.log" );
+        touch( workspace, "target/its/simple/sub/build.log" );
+        touch( workspace, "target/its/nested/module/build.log" );
+        touch( workspace, "target/its/custom/it-build.log" );
+        touch( workspace, "target/its/custom/build.log" );
+        ReportsCollector collector = new ReportsCollector( "target/invoker-reports", "target/its", null, 1, false,
+                                                           null );
+
+        assertEquals( names( "build.log", "prebuild.log" ), names( collector.locateLogs( workspace,
+                                                                                          "simple/pom.xml" ) ) );
+        assertEquals( names( "build.log" ), names( collector.locateLogs( workspace, "nested/module/pom.xml" ) ) );
+        assertEquals( names( "it-build.log" ), names( collector.locateLogs( workspace, "custom/it-pom.xml" ) ) );
+        assertEquals( names(), names( collector.locateLogs( workspace, "missing/pom.xml" ) ) );
+    }
+
+    @Test
+    public void directories_and_patterns_are_scanned_together()
+        throws Exception
+    {
+        File workspace = tmp.getRoot();
+        touch( workspace, "target/invoker-reports/BUILD-a.xml" );
+        touch( workspace, "target/invoker-reports/other.xml" );
+        touch( workspace, "module/reports/BUILD-b.xml" );
+
+        List<File> reports = ReportsCollector.locateReports( workspace, "target/invoker-reports; module/**/*.xml" );
+
+        assertEquals( names( "BUILD-b.xml", "BUILD-a.xml" ), names( reports ) );
+    }
+
+    @Test
+    public void stored_blobs_asked_once_per_recording()
+        throws Exception
+    {
+        File workspace = tmp.getRoot();
+        File reports = new File( workspace, "target/invoker-reports" );
+        Files.createDirectories( reports.toPath() );
+        for ( String report : new String[]{ "BUILD-simple-jsp.xml", "BUILD-simple-jsp-fail.xml" } )
+        {
+            Files.copy( new File( "src/test/resources/invoker-reports", report ).toPath(),
+                        new File( reports, report ).toPath() );
+        }
+        for ( String it : new String[]{ "simple-jsp", "simple-jsp-fail" } )
+        {
+            File log = new File( workspace, "target/its/" + it + "/build.log" );
+            Files.createDirectories( log.getParentFile().toPath() );
+            Files.copy( new File( "src/test/resources/it/" + it + "/build.log" ).toPath(), log.toPath() );
+        }
+        List<Collection<String>> asked = Collections.synchronizedList( new ArrayList<>() );
+        BlobStore.Index index = names -> {
+            asked.add( names );
+            return Collections.emptySet();
+        };
+
+        ReportsBatch batch = new ReportsCollector( "target/invoker-reports", "target/its", null, 2, false,
+                                                   new RemoteOutputStream( new ByteArrayOutputStream() ) ) //
+            .deduplicate( index ) //
+            .invoke( workspace, null );
+
+        assertEquals( 2, batch.getInvokerResults().size() );
+        // the blobs of both reports and both logs in a single round trip
+        assertEquals( 1, asked.size() );
+        assertEquals( 4, new HashSet<>( asked.get( 0 ) ).size() );
+    }
+
+    @Test
+    public void reports_of_the_same_project_stored_apart()
+        throws Exception
+    {
+        File workspace = tmp.getRoot();
+        File reports = new File( workspace, "target/invoker-reports" );
+        Files.createDirectories( reports.toPath() );
+        for ( String report : new String[]{ "BUILD-simple-jsp.xml", "BUILD-simple-jsp-again.xml" } )
+        {
+            Files.copy( new File( "src/test/resources/invoker-reports", "BUILD-simple-jsp.xml" ).toPath(),
+                        new File( reports, report ).toPath() );
+        }
+        File log = new File( workspace, "target/its/simple-jsp/build.log" );
+        Files.createDirectories( log.getParentFile().toPath() );
+        Files.copy( new File( "src/test/resources/it/simple-jsp/build.log" ).toPath(), log.toPath() );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ReportsBatch batch = new ReportsCollector( "target/invoker-reports", "target/its", null, 1, false,
+                                                   new RemoteOutputStream( out ) ).invoke( workspace, null );
+
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream( new ByteArrayInputStream( out.toByteArray() ) ))
+        {
+            for ( ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry() )
+            {
+                entries.add( entry.getName() );
+            }
+        }
+        assertEquals( names( "simple-jsp/maven-invoker-result.xml", "simple-jsp/build.log.zip",
+                             "simple-jsp-2/maven-invoker-result.xml", "simple-jsp-2/build.log.zip" ), entries );
+        List<String> reportEntries = new ArrayList<>();
+        for ( InvokerResult invokerResult : batch.getInvokerResults() )
+        {
+            reportEntries.add( invokerResult.getReportEntryName() );
+        }
+        assertEquals( names( "simple-jsp/maven-invoker-result.xml", "simple-jsp-2/maven-invoker-result.xml" ),
+                      reportEntries );
+    }
+
+    private static void touch( File workspace, String path )
+        throws IOException
+    {
+        File file = new File( workspace, path );
+        Files.createDirectories( file.getParentFile().toPath() );
+        Files.write( file.toPath(), new byte[] { 1 } );
+    }
+
+    private static List<String> names( String... names )
+    {
+        List<String> list = new ArrayList<>();
+        for ( String name : names )
+        {
+            list.add( name );
+        }
+        return list;
+    }
+
+    private static List<String> names( List<File> files )
+    {
+        List<String> list = new ArrayList<>();
+        for ( File file : files )
+        {
+            list.add( file.getName() );
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Counts of the results of a build and appends of recordings to a build already holding results.
+ */
+@JmhBenchmark
+public class ResultsCountsBenchmark
+{
+
+    @State( Scope.Benchmark )
+    public static class Results
+    {
+        @Param( { "10", "1000", "10000", "50000" } )
+        public int count;
+
+        MavenInvokerResults results;
+
+        /**
+         * Results of a small recording, appended again and again.
+         */
+        List<InvokerResult> recording;
+
+        @Setup
+        public void setup()
+        {
+            results = SyntheticReports.results( count );
+            recording = SyntheticReports.results( 10 ).getInvokerResults();
+        }
+    }
+
+    /**
+     * Action not attached to a build, so the appends only grow its results.
+     */
+    @State( Scope.Thread )
+    public static class GrowingAction
+    {
+        MavenInvokerBuildAction action;
+
+        @Setup( Level.Iteration )
+        public void setup( Results results )
+        {
+            MavenInvokerResults copy = new MavenInvokerResults();
+            copy.getInvokerResults().addAll( results.results.getInvokerResults() );
+            action = new MavenInvokerBuildAction( copy );
+        }
+    }
+
+    @Benchmark
+    public int initTestCountsFields( Results results )
+    {
+        return new MavenInvokerBuildAction( results.results ).getRunTests();
+    }
+
+    @Benchmark
+    public int addResults( GrowingAction growingAction, Results results )
+    {
+        MavenInvokerResults recording = new MavenInvokerResults();
+        recording.getInvokerResults().addAll( results.recording );
+        growingAction.action.addResults( recording );
+        return growingAction.action.getRunTests();
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+import org.jenkinsci.plugins.maveninvoker.storage.ResultsManifest;
+import org.jvnet.hudson.test.TestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Loads of the results of a recorded build, from its manifest or from its archives like the builds recorded before
+ * the manifest, and lookups of a single result in the loaded results.
+ */
+@JmhBenchmark
+public class ResultsLoadingBenchmark
+{
+
+    public static class RecordedBuild
+        extends JmhBenchmarkState
+    {
+        @Param( { "10", "1000", "10000", "50000" } )
+        public int count;
+
+        /**
+         * <code>false</code> to load the results from the reports of the archives.
+         */
+        @Param( { "true", "false" } )
+        public boolean manifest;
+
+        MavenInvokerBuildAction action;
+
+        String key;
+
+        String[] projects;
+
+        @Override
+        public void setup()
+            throws Exception
+        {
+            FreeStyleProject project = getJenkins().createProject( FreeStyleProject.class, "benchmark" );
+            project.getBuildersList().add( new ReportsBuilder( count ) );
+            project.getPublishersList().add( new MavenInvokerRecorder( "target/invoker-reports/*.xml" ) );
+            FreeStyleBuild build = project.scheduleBuild2( 0 ).get();
+            if ( !manifest )
+            {
+                Files.delete( new File( new File( build.getRootDir(), MavenInvokerRecorder.STORAGE_DIRECTORY ),
+                                        ResultsManifest.FILE_NAME ).toPath() );
+            }
+            action = build.getAction( MavenInvokerBuildAction.class );
+            key = MavenInvokerResultsCache.key( build );
+            List<InvokerResult> results = action.getMavenInvokerResults().getInvokerResults();
+            projects = new String[results.size()];
+            for ( int i = 0; i < projects.length; i++ )
+            {
+                projects[i] = results.get( i ).project;
+            }
+        }
+    }
+
+    /**
+     * Writes the reports of <code>count</code> ITs to the workspace.
+     */
+    private static final class ReportsBuilder
+        extends TestBuilder
+    {
+        private final int count;
+
+        ReportsBuilder( int count )
+        {
+            this.count = count;
+        }
+
+        @Override
+        public boolean perform( AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener )
+            throws IOException
+        {
+            File reports = new File( build.getWorkspace().getRemote(), "target/invoker-reports" );
+            Files.createDirectories( reports.toPath() );
+            for ( int i = 0; i < count; i++ )
+            {
+                Files.write( new File( reports, "BUILD-it-" + i + ".xml" ).toPath(), SyntheticReports.report( i ) );
+            }
+            return true;
+        }
+    }
+
+    @Benchmark
+    public MavenInvokerResults loadResults( RecordedBuild recordedBuild )
+    {
+        MavenInvokerResultsCache.get().invalidate( recordedBuild.key );
+        return recordedBuild.action.getMavenInvokerResults();
+    }
+
+    /**
+     * Only the lookup, {@link MavenInvokerBuildAction#getResult(String)} also reads the report for the details.
+     */
+    @Benchmark
+    public InvokerResult getResult( RecordedBuild recordedBuild )
+    {
+        String[] projects = recordedBuild.projects;
+        return recordedBuild.action.getMavenInvokerResults() //
+            .getInvokerResult( projects[ThreadLocalRandom.current().nextInt( projects.length )] );
+    }
+
+}
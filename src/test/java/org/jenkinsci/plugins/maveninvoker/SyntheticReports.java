@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.maveninvoker;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.apache.maven.plugins.invoker.model.io.xpp3.BuildJobXpp3Writer;
+import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports of ITs made up for the benchmarks, one in ten failed and one in twenty-five skipped.
+ */
+final class SyntheticReports
+{
+    private SyntheticReports()
+    {
+        // no op
+    }
+
+    static String project( int index )
+    {
+        return "it-" + index + "/pom.xml";
+    }
+
+    static BuildJob buildJob( int index )
+    {
+        BuildJob buildJob = new BuildJob();
+        buildJob.setProject( project( index ) );
+        buildJob.setName( "IT number " + index );
+        buildJob.setDescription( "Checks the behaviour number " + index + " of the plugin" );
+        buildJob.setTime( ( index % 100 ) / 10f );
+        if ( index % 10 == 0 )
+        {
+            buildJob.setResult( BuildJob.Result.FAILURE_BUILD );
+            buildJob.setFailureMessage( "The build exited with code 1, see " + project( index ) );
+        }
+        else if ( index % 25 == 0 )
+        {
+            buildJob.setResult( BuildJob.Result.SKIPPED );
+        }
+        else
+        {
+            buildJob.setResult( BuildJob.Result.SUCCESS );
+        }
+        return buildJob;
+    }
+
+    static byte[] report( int index )
+        throws IOException
+    {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        new BuildJobXpp3Writer().write( xml, buildJob( index ) );
+        return xml.toByteArray();
+    }
+
+    static List<byte[]> reports( int count )
+        throws IOException
+    {
+        List<byte[]> reports = new ArrayList<>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            reports.add( report( i ) );
+        }
+        return reports;
+    }
+
+    static MavenInvokerResults results( int count )
+    {
+        MavenInvokerResults results = new MavenInvokerResults();
+        for ( int i = 0; i < count; i++ )
+        {
+            results.getInvokerResults().add( ReportsCollector.map( buildJob( i ), null ) );
+        }
+        return results;
+    }
+}
@@ -0,0 +1,39 @@
+package org.jenkinsci.plugins.maveninvoker.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BuildHistoryTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void recordings_of_a_build_are_compacted()
+        throws Exception
+    {
+        File file = new File( tmp.getRoot(), BuildHistory.FILE_NAME );
+        BuildHistory history = BuildHistory.load( file );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            BuildSummary summary = new BuildSummary( 1 );
+            summary.add( 1, 0, 0, 2 );
+            history.append( summary );
+        }
+        // magic and at most 2 * builds + 17 records of 25 bytes
+        assertTrue( file.length() <= 4 + 19 * 25 );
+
+        List<BuildSummary> summaries = BuildHistory.load( file ).getSummaries( 10 );
+        assertEquals( 1, summaries.size() );
+        assertEquals( 1000, summaries.get( 0 ).getPassed() );
+        assertEquals( 2000, summaries.get( 0 ).getTime(), 0 );
+    }
+}
@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.maveninvoker.history;
+
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DurationHistoryTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void baseline_of_the_last_times()
+        throws Exception
+    {
+        File file = new File( tmp.getRoot(), DurationHistory.FILE_NAME );
+        DurationHistory history = DurationHistory.load( file );
+        for ( int number = 1; number <= 10; number++ )
+        {
+            history.append( number, Arrays.asList( result( "it/pom.xml", "success", number ),
+                                                   result( "failed/pom.xml", "failure-build", number ) ) );
+        }
+
+        DurationHistory.Baseline baseline = history.getBaseline( "it/pom.xml" );
+        assertNotNull( baseline );
+        assertEquals( 10, baseline.getSamples() );
+        assertEquals( 5.5, baseline.getMedian(), 0 );
+        assertEquals( 9, baseline.getP90(), 0 );
+        // failed ITs have no usual time
+        assertNull( history.getBaseline( "failed/pom.xml" ) );
+        // only the builds before the given one count
+        assertEquals( 3, history.getBaseline( "it/pom.xml", 6 ).getMedian(), 0 );
+        assertNull( history.getBaseline( "it/pom.xml", 5 ) );
+
+        DurationHistory reloaded = DurationHistory.load( file );
+        assertEquals( 5.5, reloaded.getBaseline( "it/pom.xml" ).getMedian(), 0 );
+    }
+
+    @Test
+    public void mark_slower_its()
+        throws Exception
+    {
+        DurationHistory history = DurationHistory.load( new File( tmp.getRoot(), DurationHistory.FILE_NAME ) );
+        for ( int number = 1; number <= 5; number++ )
+        {
+            history.append( number, Arrays.asList( result( "slow/pom.xml", "success", 10 ),
+                                                   result( "short/pom.xml", "success", 0.1 ) ) );
+        }
+
+        List<InvokerResult> results = Arrays.asList( result( "slow/pom.xml", "success", 30 ),
+                                                     result( "short/pom.xml", "success", 0.5 ),
+                                                     result( "new/pom.xml", "success", 100 ) );
+        assertEquals( 1, history.markRegressions( 6, results, 2 ) );
+        assertTrue( results.get( 0 ).isSlower() );
+        assertEquals( 10, results.get( 0 ).baselineTime, 0 );
+        // five times longer but less than a second more
+        assertFalse( results.get( 1 ).isSlower() );
+        assertFalse( results.get( 2 ).isSlower() );
+    }
+
+    @Test
+    public void interleaved_recordings_and_deleted_builds()
+        throws Exception
+    {
+        File file = new File( tmp.getRoot(), DurationHistory.FILE_NAME );
+        DurationHistory history = DurationHistory.load( file );
+        for ( int number = 1; number <= 4; number++ )
+        {
+            history.append( number, Arrays.asList( result( "it/pom.xml", "success", 2 ) ) );
+        }
+        // build 5 records again after build 6, its time is replaced rather than counted twice
+        history.append( 5, Arrays.asList( result( "it/pom.xml", "success", 2 ) ) );
+        history.append( 6, Arrays.asList( result( "it/pom.xml", "success", 2 ) ) );
+        history.append( 5, Arrays.asList( result( "it/pom.xml", "success", 20 ) ) );
+        DurationHistory.Baseline baseline = history.getBaseline( "it/pom.xml" );
+        assertEquals( 6, baseline.getSamples() );
+        assertEquals( 20, baseline.getP90(), 0 );
+
+        history.remove( 5 );
+        assertEquals( 2, history.getBaseline( "it/pom.xml" ).getP90(), 0 );
+        history.remove( 6 );
+        assertNull( history.getBaseline( "it/pom.xml" ) );
+        history.append( 7, Arrays.asList( result( "it/pom.xml", "success", 3 ) ) );
+        assertEquals( 5, history.getBaseline( "it/pom.xml" ).getSamples() );
+
+        DurationHistory reloaded = DurationHistory.load( file );
+        assertEquals( 5, reloaded.getBaseline( "it/pom.xml" ).getSamples() );
+        assertEquals( 3, reloaded.getBaseline( "it/pom.xml" ).getP90(), 0 );
+        reloaded.remove( 1 );
+        reloaded.remove( 2 );
+        reloaded.remove( 3 );
+        reloaded.remove( 4 );
+        reloaded.remove( 7 );
+        assertTrue( reloaded.getProjects().isEmpty() );
+        assertTrue( DurationHistory.load( file ).getProjects().isEmpty() );
+    }
+
+    private static InvokerResult result( String project, String result, double time )
+    {
+        InvokerResult invokerResult = new InvokerResult();
+        invokerResult.project = project;
+        invokerResult.name = project;
+        invokerResult.result = result;
+        invokerResult.time = time;
+        return invokerResult;
+    }
+}
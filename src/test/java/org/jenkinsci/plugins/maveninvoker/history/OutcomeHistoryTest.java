@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.maveninvoker.history;
+
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutcomeHistoryTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void flag_flipping_its()
+        throws Exception
+    {
+        File file = new File( tmp.getRoot(), OutcomeHistory.FILE_NAME );
+        OutcomeHistory history = OutcomeHistory.load( file );
+        for ( int number = 1; number <= 10; number++ )
+        {
+            history.append( number, Arrays.asList( result( "stable/pom.xml", "success" ),
+                                                   result( "flaky/pom.xml", number % 2 == 0 ? "success"
+                                                       : "failure-build" ) ) );
+        }
+
+        assertTrue( history.isFlaky( "flaky/pom.xml" ) );
+        assertEquals( 1.0, history.getFlipRate( "flaky/pom.xml" ), 0 );
+        assertFalse( history.isFlaky( "stable/pom.xml" ) );
+        assertEquals( 0, history.getFlipRate( "stable/pom.xml" ), 0 );
+
+        OutcomeHistory reloaded = OutcomeHistory.load( file );
+        assertTrue( reloaded.isFlaky( "flaky/pom.xml" ) );
+        assertFalse( reloaded.isFlaky( "stable/pom.xml" ) );
+    }
+
+    @Test
+    public void one_outcome_per_build()
+        throws Exception
+    {
+        OutcomeHistory history = OutcomeHistory.load( new File( tmp.getRoot(), OutcomeHistory.FILE_NAME ) );
+        for ( int number = 1; number <= 10; number++ )
+        {
+            // two branches of the same build, one failing
+            history.append( number, Arrays.asList( result( "it/pom.xml", "success" ) ) );
+            history.append( number, Arrays.asList( result( "it/pom.xml", "failure-build" ) ) );
+        }
+
+        assertEquals( 0, history.getFlipRate( "it/pom.xml" ), 0 );
+    }
+
+    @Test
+    public void deleted_builds_no_longer_count()
+        throws Exception
+    {
+        File file = new File( tmp.getRoot(), OutcomeHistory.FILE_NAME );
+        OutcomeHistory history = OutcomeHistory.load( file );
+        for ( int number = 1; number <= 6; number++ )
+        {
+            history.append( number, Arrays.asList( result( "it/pom.xml", number == 2 || number == 4 ? "failure-build"
+                : "success" ) ) );
+        }
+        assertEquals( 0.8, history.getFlipRate( "it/pom.xml" ), 0.001 );
+
+        history.remove( 2 );
+        history.remove( 4 );
+
+        assertEquals( 0, history.getFlipRate( "it/pom.xml" ), 0 );
+        assertEquals( 0, OutcomeHistory.load( file ).getFlipRate( "it/pom.xml" ), 0 );
+        // the next outcome follows the remaining ones
+        history.append( 7, Arrays.asList( result( "it/pom.xml", "failure-build" ) ) );
+        assertEquals( 0.25, history.getFlipRate( "it/pom.xml" ), 0.001 );
+    }
+
+    private static InvokerResult result( String project, String result )
+    {
+        InvokerResult invokerResult = new InvokerResult();
+        invokerResult.project = project;
+        invokerResult.name = project;
+        invokerResult.result = result;
+        return invokerResult;
+    }
+}
@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.maveninvoker.pipeline;
+
+import org.jenkinsci.plugins.maveninvoker.MavenInvokerRecorder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class MavenInvokerShardsStepExecutionTest
+{
+
+    @Test
+    public void longest_first_on_the_shortest_shard()
+    {
+        Map<String, Double> estimates = new LinkedHashMap<>();
+        estimates.put( "a", 7. );
+        estimates.put( "b", 5. );
+        estimates.put( "c", 4. );
+        estimates.put( "d", 3. );
+        estimates.put( "e", 3. );
+        estimates.put( "f", 2. );
+
+        List<MavenInvokerShardsStepExecution.Shard> shards = MavenInvokerShardsStepExecution.balance( estimates, 2 );
+        assertEquals( 2, shards.size() );
+        assertEquals( "a,d,f", shards.get( 0 ).getInclude() );
+        assertEquals( 12, shards.get( 0 ).time, 0 );
+        assertEquals( "b,c,e", shards.get( 1 ).getInclude() );
+        assertEquals( 12, shards.get( 1 ).time, 0 );
+    }
+
+    @Test
+    public void no_empty_shard()
+    {
+        Map<String, Double> estimates = new LinkedHashMap<>();
+        estimates.put( "a", 0. );
+        estimates.put( "b", 0. );
+        estimates.put( "c", 0. );
+
+        List<MavenInvokerShardsStepExecution.Shard> shards = MavenInvokerShardsStepExecution.balance( estimates, 5 );
+        assertEquals( 3, shards.size() );
+        for ( MavenInvokerShardsStepExecution.Shard shard : shards )
+        {
+            assertEquals( 1, shard.projects.size() );
+        }
+        assertEquals( 0, MavenInvokerShardsStepExecution.balance( Collections.emptyMap(), 5 ).size() );
+    }
+
+    @Test
+    public void median_for_the_unknown_times()
+    {
+        Map<String, Double> times = new HashMap<>();
+        times.put( "a", 10. );
+        times.put( "b", 2. );
+        times.put( "c", 4. );
+        times.put( "removed", 100. );
+
+        Map<String, Double> estimates = MavenInvokerShardsStepExecution.estimate(
+            new LinkedHashSet<>( Arrays.asList( "a", "b", "c", "new" ) ), times );
+        assertEquals( 4, estimates.size() );
+        assertEquals( 4, estimates.get( "new" ), 0 );
+        assertEquals( 10, estimates.get( "a" ), 0 );
+
+        estimates = MavenInvokerShardsStepExecution.estimate( new LinkedHashSet<>( Arrays.asList( "new" ) ),
+                                                              Collections.emptyMap() );
+        assertEquals( MavenInvokerShardsStepExecution.DEFAULT_TIME, estimates.get( "new" ), 0 );
+    }
+
+    @Test
+    public void include_of_a_project()
+    {
+        assertEquals( "simple-jsp", MavenInvokerShardsStepExecution.include( "simple-jsp/pom.xml" ) );
+        assertEquals( "group/simple-jsp", MavenInvokerShardsStepExecution.include( "group\\simple-jsp\\pom.xml" ) );
+        assertEquals( "simple-jsp", MavenInvokerShardsStepExecution.include( " simple-jsp/ " ) );
+        assertEquals( "simple-jsp/other-pom.xml",
+                      MavenInvokerShardsStepExecution.include( "simple-jsp/other-pom.xml" ) );
+        // recorded by a parallel branch of a stage
+        assertEquals( "group/simple-jsp", MavenInvokerShardsStepExecution.include(
+            MavenInvokerRecorder.reportedProject( "its-0 / Invoker /group/simple-jsp/pom.xml" ) ) );
+    }
+}
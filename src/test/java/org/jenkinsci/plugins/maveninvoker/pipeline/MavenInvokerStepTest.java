@@ -3,6 +3,9 @@ package org.jenkinsci.plugins.maveninvoker.pipeline;
 import hudson.FilePath;
 import hudson.model.Result;
 import org.jenkinsci.plugins.maveninvoker.MavenInvokerBuildAction;
+import org.jenkinsci.plugins.maveninvoker.history.BuildHistory;
+import org.jenkinsci.plugins.maveninvoker.history.BuildSummary;
+import org.jenkinsci.plugins.maveninvoker.history.DurationHistory;
 import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
 import org.jenkinsci.plugins.maveninvoker.results.MavenInvokerResults;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
@@ -15,11 +18,14 @@ import org.jvnet.hudson.test.JenkinsRule;
 
 import java.io.File;
 import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class MavenInvokerStepTest
 {
@@ -75,10 +81,13 @@ public class MavenInvokerStepTest
         InvokerResult found = mavenInvokerBuildAction.getResult( URLEncoder.encode( invokerResult.project, "UTF-8"));
         assertNotNull( found );
         assertEquals( invokerResult.name, found.name );
-        assertNotNull( invokerResult.log );
-
-
+        assertFalse( found.getLogTail().isEmpty() );
+        // the cached results only hold the summary, the details are read from the report
+        assertNull( invokerResult.description );
+        assertEquals( "", found.description );
 
+        // the workspace reports are left untouched
+        assertTrue( reportsDir.child( "BUILD-simple-jsp.xml" ).readToString().contains( "project=\"simple-jsp/pom.xml\"" ) );
     }
 
     @Test
@@ -129,8 +138,223 @@ public class MavenInvokerStepTest
         InvokerResult found = mavenInvokerBuildAction.getResult( URLEncoder.encode( invokerResult.project, "UTF-8"));
         assertNotNull( found );
         assertEquals( invokerResult.name, found.name );
-        assertNotNull( invokerResult.log );
+        assertFalse( found.getLogTail().isEmpty() );
+
+    }
+
+    @Test
+    public void parallel_parsing()
+        throws Exception
+    {
+        WorkflowJob j = rule.jenkins.createProject( WorkflowJob.class, "parallel_parsing" );
+
+        j.setDefinition( new CpsFlowDefinition( "node {\n" + //
+                                                    "  maven_invoker(parallelism: 4)\n" + //
+                                                    "}\n", true ) );
+
+        // copy test resources
+        FilePath ws = rule.jenkins.getWorkspaceFor( j);
+
+        FilePath reports = new FilePath( new File( "src/test/resources/invoker-reports") );
+        FilePath reportsDir = ws.child( "target" ).child( "invoker-reports" );
+        reportsDir.mkdirs();
+        reports.copyRecursiveTo( reportsDir );
+
+        FilePath builds = new FilePath( new File( "src/test/resources/it") );
+        FilePath buildsDir = ws.child( "target" ).child( "it" );
+        buildsDir.mkdirs();
+        builds.copyRecursiveTo( buildsDir );
+
+        WorkflowRun r = j.scheduleBuild2( 0).waitForStart();
+        rule.assertBuildStatus( Result.UNSTABLE, rule.waitForCompletion( r));
+
+        MavenInvokerBuildAction mavenInvokerBuildAction = r.getAction( MavenInvokerBuildAction.class );
+        assertEquals( 2, mavenInvokerBuildAction.getRunTests());
+        assertEquals( 1, mavenInvokerBuildAction.getPassedTestCount());
+        assertEquals( 1, mavenInvokerBuildAction.getFailCount());
+
+        List<InvokerResult> invokerResults = mavenInvokerBuildAction.getMavenInvokerResults().getInvokerResults();
+        assertEquals( "simple-jsp-fail/pom.xml", invokerResults.get( 0 ).project );
+        assertEquals( "simple-jsp/pom.xml", invokerResults.get( 1 ).project );
+    }
+
+    @Test
+    public void live_recording()
+        throws Exception
+    {
+        WorkflowJob j = rule.jenkins.createProject( WorkflowJob.class, "live_recording" );
+
+        j.setDefinition( new CpsFlowDefinition( "node {\n" + //
+                                                    "  def results = maven_invoker_live(pollInterval: 1) {\n" + //
+                                                    "    sleep 5\n" + //
+                                                    "  }\n" + //
+                                                    "  echo \"live results: ${results.invokerResults.size()}\"\n" + //
+                                                    "}\n", false ) );
+
+        // copy test resources
+        FilePath ws = rule.jenkins.getWorkspaceFor( j);
+
+        FilePath reports = new FilePath( new File( "src/test/resources/invoker-reports") );
+        FilePath reportsDir = ws.child( "target" ).child( "invoker-reports" );
+        reportsDir.mkdirs();
+        reports.copyRecursiveTo( reportsDir );
+
+        FilePath builds = new FilePath( new File( "src/test/resources/it") );
+        FilePath buildsDir = ws.child( "target" ).child( "it" );
+        buildsDir.mkdirs();
+        builds.copyRecursiveTo( buildsDir );
+
+        WorkflowRun r = j.scheduleBuild2( 0).waitForStart();
+        rule.assertBuildStatus( Result.UNSTABLE, rule.waitForCompletion( r));
+        // each report is recorded once, by a poll or once the body is over
+        rule.assertLogContains( "live results: 2", r );
+
+        MavenInvokerBuildAction mavenInvokerBuildAction = r.getAction( MavenInvokerBuildAction.class );
+        assertEquals( 2, mavenInvokerBuildAction.getRunTests());
+        assertEquals( 1, mavenInvokerBuildAction.getPassedTestCount());
+        assertEquals( 1, mavenInvokerBuildAction.getFailCount());
+
+        // the histories get the results of the step once it is over
+        BuildSummary summary = BuildHistory.get( j ).getSummaries( 1 ).get( 0 );
+        assertEquals( r.getNumber(), summary.getNumber() );
+        assertEquals( 2, summary.getTotal() );
+    }
+
+    @Test
+    public void failures_only_logs()
+        throws Exception
+    {
+        WorkflowJob j = rule.jenkins.createProject( WorkflowJob.class, "failures_only_logs" );
+
+        j.setDefinition( new CpsFlowDefinition( "node {\n" + //
+                                                    "  maven_invoker(logPolicy: 'FAILURES')\n" + //
+                                                    "}\n", true ) );
+
+        // copy test resources
+        FilePath ws = rule.jenkins.getWorkspaceFor( j);
+
+        FilePath reports = new FilePath( new File( "src/test/resources/invoker-reports") );
+        FilePath reportsDir = ws.child( "target" ).child( "invoker-reports" );
+        reportsDir.mkdirs();
+        reports.copyRecursiveTo( reportsDir );
+
+        FilePath builds = new FilePath( new File( "src/test/resources/it") );
+        FilePath buildsDir = ws.child( "target" ).child( "it" );
+        buildsDir.mkdirs();
+        builds.copyRecursiveTo( buildsDir );
+
+        WorkflowRun r = j.scheduleBuild2( 0).waitForStart();
+        rule.assertBuildStatus( Result.UNSTABLE, rule.waitForCompletion( r));
+
+        MavenInvokerBuildAction mavenInvokerBuildAction = r.getAction( MavenInvokerBuildAction.class );
+        assertEquals( 2, mavenInvokerBuildAction.getRunTests());
+        // the log of the passed IT is only counted
+        assertEquals( 1, mavenInvokerBuildAction.getSkippedLogs());
+        assertEquals( 0, mavenInvokerBuildAction.getTruncatedLogs());
+        assertTrue( mavenInvokerBuildAction.getSkippedLogBytes() > 0);
+        assertTrue( mavenInvokerBuildAction.getLogBytes() > 0);
+
+        InvokerResult failed = mavenInvokerBuildAction.getResult( "simple-jsp-fail%2Fpom.xml" );
+        assertFalse( failed.getLogTail().isEmpty() );
+    }
+
+    @Test
+    public void shards_from_recorded_times()
+        throws Exception
+    {
+        WorkflowJob j = rule.jenkins.createProject( WorkflowJob.class, "shards" );
+
+        j.setDefinition( new CpsFlowDefinition( "node {\n" + //
+                                                    "  maven_invoker()\n" + //
+                                                    "}\n", true ) );
+
+        // copy test resources
+        FilePath ws = rule.jenkins.getWorkspaceFor( j);
 
+        FilePath reports = new FilePath( new File( "src/test/resources/invoker-reports") );
+        FilePath reportsDir = ws.child( "target" ).child( "invoker-reports" );
+        reportsDir.mkdirs();
+        reports.copyRecursiveTo( reportsDir );
+
+        FilePath builds = new FilePath( new File( "src/test/resources/it") );
+        FilePath buildsDir = ws.child( "target" ).child( "it" );
+        buildsDir.mkdirs();
+        builds.copyRecursiveTo( buildsDir );
+
+        rule.assertBuildStatus( Result.UNSTABLE, j.scheduleBuild2( 0 ) );
+
+        j.setDefinition( new CpsFlowDefinition( "def shards = maven_invoker_shards(shards: 3)\n" + //
+                                                    "for (shard in shards) {\n" + //
+                                                    "  echo \"shard: ${shard}\"\n" + //
+                                                    "}\n" + //
+                                                    "def given = maven_invoker_shards(shards: 1, projects: ['a/pom.xml', 'b'])\n" + //
+                                                    "echo \"given: ${given[0]}\"\n", true ) );
+        WorkflowRun r = rule.buildAndAssertSuccess( j );
+        // one IT per shard, no empty shard
+        rule.assertLogContains( "split in 2 shard(s)", r );
+        rule.assertLogContains( "shard: simple-jsp\n", r );
+        rule.assertLogContains( "shard: simple-jsp-fail\n", r );
+        rule.assertLogContains( "given: a,b", r );
+    }
+
+    @Test
+    public void shards_after_parallel_branches()
+        throws Exception
+    {
+        WorkflowJob j = rule.jenkins.createProject( WorkflowJob.class, "parallel_shards" );
+
+        j.setDefinition( new CpsFlowDefinition( "node {\n" + //
+                                                    "  stage('Invoker') {\n" + //
+                                                    "    parallel 'its-0': { maven_invoker() }, 'its-1': { maven_invoker() }\n" + //
+                                                    "  }\n" + //
+                                                    "}\n", true ) );
+
+        // copy test resources
+        FilePath ws = rule.jenkins.getWorkspaceFor( j);
+
+        FilePath reports = new FilePath( new File( "src/test/resources/invoker-reports") );
+        FilePath reportsDir = ws.child( "target" ).child( "invoker-reports" );
+        reportsDir.mkdirs();
+        reports.copyRecursiveTo( reportsDir );
+
+        FilePath builds = new FilePath( new File( "src/test/resources/it") );
+        FilePath buildsDir = ws.child( "target" ).child( "it" );
+        buildsDir.mkdirs();
+        builds.copyRecursiveTo( buildsDir );
+
+        WorkflowRun parallel = j.scheduleBuild2( 0 ).get();
+        rule.assertBuildStatus( Result.UNSTABLE, parallel );
+        // each branch recorded the ITs under its own name
+        assertEquals( 4, parallel.getAction( MavenInvokerBuildAction.class ).getRunTests() );
+        // but their times are those of the same ITs
+        assertEquals( Collections.singleton( "simple-jsp/pom.xml" ), DurationHistory.get( j ).getProjects() );
+        for ( int i = 0; i < 4; i++ )
+        {
+            parallel = j.scheduleBuild2( 0 ).get();
+        }
+        // the results of the branches have the usual time of their IT
+        int branchResults = 0;
+        for ( InvokerResult branchResult : parallel.getAction( MavenInvokerBuildAction.class )
+            .getMavenInvokerResults().getInvokerResults() )
+        {
+            if ( branchResult.project.endsWith( " /simple-jsp/pom.xml" ) )
+            {
+                assertTrue( branchResult.project.contains( "its-" ) );
+                assertEquals( 5, branchResult.getBaseline().getSamples() );
+                branchResults++;
+            }
+        }
+        assertEquals( 2, branchResults );
+
+        j.setDefinition( new CpsFlowDefinition( "def shards = maven_invoker_shards(shards: 3)\n" + //
+                                                    "for (shard in shards) {\n" + //
+                                                    "  echo \"shard: ${shard}\"\n" + //
+                                                    "}\n", true ) );
+        WorkflowRun r = rule.buildAndAssertSuccess( j );
+        rule.assertLogContains( "2 IT(s), 2 with a recorded time", r );
+        rule.assertLogContains( "split in 2 shard(s)", r );
+        rule.assertLogContains( "shard: simple-jsp\n", r );
+        rule.assertLogContains( "shard: simple-jsp-fail\n", r );
     }
 
 }
@@ -0,0 +1,108 @@
+package org.jenkinsci.plugins.maveninvoker.results;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AppendOnlyListTest
+{
+
+    @Test
+    public void concurrent_appends()
+        throws Exception
+    {
+        List<Integer> list = new AppendOnlyList<>();
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for ( int branch = 0; branch < 40; branch++ )
+            {
+                int first = branch * 1000;
+                futures.add( executor.submit( () -> {
+                    List<Integer> batch = new ArrayList<>();
+                    for ( int i = first; i < first + 1000; i++ )
+                    {
+                        batch.add( i );
+                    }
+                    list.addAll( batch );
+                } ) );
+            }
+            for ( Future<?> future : futures )
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertEquals( 40000, list.size() );
+        List<Integer> sorted = new ArrayList<>( list );
+        Collections.sort( sorted );
+        for ( int i = 0; i < sorted.size(); i++ )
+        {
+            assertEquals( i, sorted.get( i ).intValue() );
+        }
+    }
+
+    @Test
+    public void iterate_while_appending()
+        throws Exception
+    {
+        List<Integer> list = new AppendOnlyList<>();
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<?> appends = executor.submit( () -> {
+                for ( int i = 0; i < 100000; i++ )
+                {
+                    list.add( i );
+                }
+                done.set( true );
+            } );
+            int iterations = 0;
+            while ( !done.get() || iterations == 0 )
+            {
+                // the readers of the results iterate, copy and sort while branches record
+                int expected = 0;
+                for ( Integer element : list )
+                {
+                    assertEquals( expected++, element.intValue() );
+                }
+                List<Integer> copy = new ArrayList<>( list );
+                for ( int i = 0; i < copy.size(); i++ )
+                {
+                    assertEquals( i, copy.get( i ).intValue() );
+                }
+                iterations++;
+            }
+            appends.get();
+            assertTrue( iterations > 0 );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertEquals( 100000, list.size() );
+    }
+
+    @Test( expected = IndexOutOfBoundsException.class )
+    public void get_beyond_size()
+    {
+        List<String> list = new AppendOnlyList<>();
+        list.add( "a" );
+        list.get( 1 );
+    }
+}
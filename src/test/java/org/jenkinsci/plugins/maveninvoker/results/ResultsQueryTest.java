@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.maveninvoker.results;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResultsQueryTest
+{
+
+    @Test
+    public void failures_first_by_pages()
+    {
+        MavenInvokerResults results = new MavenInvokerResults();
+        for ( int i = 0; i < 10; i++ )
+        {
+            results.getInvokerResults().add( result( "it-" + i + "/pom.xml", i % 3 == 0 ? "failure-build" : "success",
+                                                     i ) );
+        }
+
+        ResultsPage first = new ResultsQuery( null, null, 0, ResultsQuery.SORT_FAILURES, 0, 3 ).select( results );
+        assertEquals( 10, first.getTotal() );
+        assertEquals( 3, first.getResults().size() );
+        for ( InvokerResult invokerResult : first.getResults() )
+        {
+            assertEquals( "failure-build", invokerResult.result );
+        }
+        assertTrue( first.isFirst() );
+        assertFalse( first.isLast() );
+
+        ResultsPage last = new ResultsQuery( null, null, 0, ResultsQuery.SORT_FAILURES, 9, 3 ).select( results );
+        assertEquals( 1, last.getResults().size() );
+        assertTrue( last.isLast() );
+
+        // the sorted view is reused until results are appended
+        assertSame( results.getSortedResults( ResultsQuery.SORT_FAILURES ),
+                    results.getSortedResults( ResultsQuery.SORT_FAILURES ) );
+    }
+
+    @Test
+    public void filter_by_result_and_time()
+    {
+        MavenInvokerResults results = new MavenInvokerResults();
+        results.getInvokerResults().add( result( "fast/pom.xml", "success", 1 ) );
+        results.getInvokerResults().add( result( "slow/pom.xml", "success", 100 ) );
+        results.getInvokerResults().add( result( "broken/pom.xml", "failure-build", 50 ) );
+
+        ResultsPage slow = new ResultsQuery( "success", null, 10, ResultsQuery.SORT_TIME, 0, 10 ).select( results );
+        assertEquals( 1, slow.getTotal() );
+        assertEquals( "slow/pom.xml", slow.getResults().get( 0 ).project );
+
+        ResultsPage failures = new ResultsQuery( ResultsQuery.FAILURES, "bro", 0, null, 0, 10 ).select( results );
+        assertEquals( 1, failures.getTotal() );
+        assertEquals( "broken/pom.xml", failures.getResults().get( 0 ).project );
+    }
+
+    @Test
+    public void start_past_the_end()
+    {
+        MavenInvokerResults results = new MavenInvokerResults();
+        results.getInvokerResults().add( result( "it/pom.xml", "success", 1 ) );
+
+        ResultsQuery unfiltered = new ResultsQuery( null, null, Integer.MAX_VALUE - 1, 10 );
+        assertEquals( Integer.MAX_VALUE, unfiltered.getEnd() );
+        ResultsPage page = unfiltered.select( results );
+        assertTrue( page.getResults().isEmpty() );
+        assertEquals( 1, page.getTotal() );
+        assertTrue( page.isLast() );
+
+        ResultsPage failures = new ResultsQuery( ResultsQuery.FAILURES, null, Integer.MAX_VALUE, 10 ).select( results );
+        assertTrue( failures.getResults().isEmpty() );
+        assertTrue( failures.isLast() );
+    }
+
+    private static InvokerResult result( String project, String result, double time )
+    {
+        InvokerResult invokerResult = new InvokerResult();
+        invokerResult.project = project;
+        invokerResult.name = project;
+        invokerResult.result = result;
+        invokerResult.time = time;
+        return invokerResult;
+    }
+}
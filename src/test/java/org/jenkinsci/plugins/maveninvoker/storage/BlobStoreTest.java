@@ -0,0 +1,158 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+import hudson.Util;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlobStoreTest
+{
+    private static final byte[] REPORT = "<build-job/>".getBytes( StandardCharsets.UTF_8 );
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void blobs_are_shared_and_released()
+        throws Exception
+    {
+        File blobs = tmp.newFolder( BlobStore.DIRECTORY );
+        BlobStore store = BlobStore.load( blobs );
+        String name = name( REPORT, ".xml" );
+        File blob = new File( blobs, name.substring( 0, 2 ) + "/" + name );
+
+        // the first build sends the blob, the second only references it
+        File first = tmp.newFolder( "1" );
+        ReportsArchive firstArchive = archive( first, name, REPORT );
+        store.ingest( firstArchive );
+        assertTrue( store.stored( Collections.singleton( name ) ).contains( name ) );
+        try (ZipFile zipFile = firstArchive.open())
+        {
+            assertNull( zipFile.getEntry( BlobStore.BLOB_ENTRY_PREFIX + name ) );
+        }
+        File second = tmp.newFolder( "2" );
+        store.ingest( archive( second, name, null ) );
+
+        ReportsArchive readArchive = new ReportsArchive( firstArchive.getFile(), store );
+        try (InputStream in = readArchive.openEntry( "it/" + ReportsArchive.REPORT_ENTRY_NAME ))
+        {
+            assertEquals( "<build-job/>", IOUtils.toString( in, StandardCharsets.UTF_8 ) );
+        }
+
+        // the counts survive a restart
+        store = BlobStore.load( blobs );
+        store.release( first );
+        assertTrue( blob.isFile() );
+        store.release( second );
+        assertFalse( blob.isFile() );
+        assertTrue( store.stored( Collections.singleton( name ) ).isEmpty() );
+    }
+
+    @Test
+    public void compressed_logs_are_checked_against_their_content()
+        throws Exception
+    {
+        BlobStore store = BlobStore.load( tmp.newFolder( BlobStore.DIRECTORY ) );
+        byte[] log = "[INFO] BUILD SUCCESS".getBytes( StandardCharsets.UTF_8 );
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = LogCodec.ZIP.compress( compressed, "build.log", 9, null ))
+        {
+            out.write( log );
+        }
+        String name = name( log, LogCodec.ZIP.getSuffix() );
+        store.ingest( archive( tmp.newFolder( "1" ), name, compressed.toByteArray() ) );
+        assertTrue( store.stored( Collections.singleton( name ) ).contains( name ) );
+    }
+
+    @Test
+    public void blobs_not_matching_their_name_are_rejected()
+        throws Exception
+    {
+        File blobs = tmp.newFolder( BlobStore.DIRECTORY );
+        BlobStore store = BlobStore.load( blobs );
+        String name = name( REPORT, ".xml" );
+        try
+        {
+            store.ingest( archive( tmp.newFolder( "1" ), name, "<build-job>".getBytes( StandardCharsets.UTF_8 ) ) );
+            fail( "stored a blob not matching its name" );
+        }
+        catch ( IOException e )
+        {
+            assertFalse( e instanceof BlobStore.MissingBlobsException );
+        }
+        assertTrue( store.stored( Collections.singleton( name ) ).isEmpty() );
+        assertFalse( new File( blobs, name.substring( 0, 2 ) + "/" + name ).exists() );
+    }
+
+    @Test
+    public void references_to_released_blobs_are_rejected()
+        throws Exception
+    {
+        BlobStore store = BlobStore.load( tmp.newFolder( BlobStore.DIRECTORY ) );
+        String name = name( REPORT, ".xml" );
+        File first = tmp.newFolder( "1" );
+        store.ingest( archive( first, name, REPORT ) );
+
+        // the agent was told the blob is stored, then the only build referencing it is deleted
+        assertTrue( store.stored( Collections.singleton( name ) ).contains( name ) );
+        store.release( first );
+        try
+        {
+            store.ingest( archive( tmp.newFolder( "2" ), name, null ) );
+            fail( "referenced a released blob" );
+        }
+        catch ( BlobStore.MissingBlobsException e )
+        {
+            assertEquals( Collections.singletonList( name ), e.getNames() );
+        }
+        assertTrue( store.stored( Collections.singleton( name ) ).isEmpty() );
+    }
+
+    private static String name( byte[] content, String suffix )
+        throws Exception
+    {
+        return Util.toHexString( MessageDigest.getInstance( "SHA-256" ).digest( content ) ) + suffix;
+    }
+
+    /**
+     * @param blob content of the blob sent with the reference, <code>null</code> to only reference it
+     */
+    private static ReportsArchive archive( File storage, String name, byte[] blob )
+        throws Exception
+    {
+        ReportsArchive archive = ReportsArchive.create( storage );
+        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( archive.getFile() ) ))
+        {
+            if ( blob != null )
+            {
+                zip.putNextEntry( new ZipEntry( BlobStore.BLOB_ENTRY_PREFIX + name ) );
+                zip.write( blob );
+                zip.closeEntry();
+            }
+            zip.putNextEntry( new ZipEntry( "it/" + ReportsArchive.REPORT_ENTRY_NAME + BlobStore.REFERENCE_SUFFIX ) );
+            zip.write( name.getBytes( StandardCharsets.UTF_8 ) );
+            zip.closeEntry();
+        }
+        return archive;
+    }
+}
@@ -0,0 +1,106 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogCodecTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void read_logs_of_any_codec()
+        throws Exception
+    {
+        String first = log( "first" );
+        String second = log( "second" );
+        byte[] dictionary = LogDictionary.train( Arrays.asList( first.getBytes( StandardCharsets.UTF_8 ),
+                                                                second.getBytes( StandardCharsets.UTF_8 ) ) );
+        assertNotNull( dictionary );
+        assertTrue( dictionary.length <= LogDictionary.MAX_SIZE );
+
+        File file = tmp.newFile( "recording-1.zip" );
+        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( file ) ))
+        {
+            zip.putNextEntry( new ZipEntry( LogCodec.DICTIONARY_ENTRY_NAME ) );
+            zip.write( dictionary );
+            zip.closeEntry();
+            for ( LogCodec codec : LogCodec.values() )
+            {
+                zip.putNextEntry( new ZipEntry( codec.name() + "/build.log" + codec.getSuffix() ) );
+                zip.write( compress( codec, first, dictionary ) );
+                zip.closeEntry();
+            }
+        }
+
+        ReportsArchive archive = new ReportsArchive( file );
+        for ( LogCodec codec : LogCodec.values() )
+        {
+            // the log is always asked by the name of its zip
+            try (InputStream in = archive.openLog( codec.name() + "/build.log.zip" ))
+            {
+                assertNotNull( codec.name(), in );
+                assertEquals( codec.name(), first, IOUtils.toString( in, StandardCharsets.UTF_8 ) );
+            }
+        }
+        assertNull( archive.openLog( "missing/build.log.zip" ) );
+    }
+
+    @Test
+    public void dictionary_shrinks_similar_logs()
+        throws Exception
+    {
+        // trained on other logs than the compressed one
+        byte[] dictionary = LogDictionary.train( Arrays.asList( log( "first" ).getBytes( StandardCharsets.UTF_8 ),
+                                                                log( "third" ).getBytes( StandardCharsets.UTF_8 ) ) );
+        String second = log( "second" );
+
+        int plain = compress( LogCodec.DICTIONARY, second, null ).length;
+        int primed = compress( LogCodec.DICTIONARY, second, dictionary ).length;
+        assertTrue( primed + " < " + plain, primed < plain );
+    }
+
+    private static byte[] compress( LogCodec codec, String log, byte[] dictionary )
+        throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = codec.compress( bytes, "build.log", Deflater.DEFAULT_COMPRESSION, dictionary ))
+        {
+            out.write( log.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String log( String name )
+    {
+        StringBuilder log = new StringBuilder();
+        for ( int i = 0; i < 50; i++ )
+        {
+            log.append( "[INFO] Downloading from central: https://repo.maven.apache.org/maven2/org/example/artifact-" )
+                .append( i ).append( "/1.0/artifact-" ).append( i ).append( "-1.0.pom\n" );
+        }
+        log.append( "[INFO] --- maven-compiler-plugin:3.10.1:compile (default-compile) @ " ).append( name )
+            .append( " ---\n" );
+        log.append( "[INFO] BUILD SUCCESS\n" );
+        return log.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.maveninvoker.storage;
+
+import org.apache.maven.plugins.invoker.model.BuildJob;
+import org.jenkinsci.plugins.maveninvoker.results.InvokerResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResultsManifestTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void compact_results()
+        throws Exception
+    {
+        InvokerResult slower = result( "second/pom.xml", "not-a-result" );
+        slower.baselineTime = 0.5;
+        ResultsManifest.append( tmp.getRoot(), Arrays.asList( result( "first/pom.xml", new String( "success" ) ),
+                                                              slower ) );
+
+        List<InvokerResult> results = ResultsManifest.read( tmp.getRoot() );
+
+        assertEquals( 2, results.size() );
+        InvokerResult first = results.get( 0 );
+        assertEquals( "first/pom.xml", first.project );
+        assertSame( BuildJob.Result.SUCCESS, first.result );
+        assertEquals( 1.5, first.time, 0 );
+        assertNull( first.logFilename );
+        assertEquals( "first/build.log.zip", first.getLogFilename() );
+        assertSame( first.archive, results.get( 1 ).archive );
+        assertSame( first.name, results.get( 1 ).name );
+        assertEquals( "not-a-result", results.get( 1 ).result );
+        assertEquals( 0, first.baselineTime, 0 );
+        assertEquals( 0.5, results.get( 1 ).baselineTime, 0 );
+    }
+
+    @Test
+    public void append_after_partial_record()
+        throws Exception
+    {
+        ResultsManifest.append( tmp.getRoot(), Arrays.asList( result( "first/pom.xml", "success" ),
+                                                              result( "second/pom.xml", "failure-build" ) ) );
+        // a recording interrupted in the middle of the second record
+        File file = new File( tmp.getRoot(), ResultsManifest.FILE_NAME );
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" ))
+        {
+            randomAccessFile.setLength( file.length() - 5 );
+        }
+        assertEquals( 1, ResultsManifest.read( tmp.getRoot() ).size() );
+
+        ResultsManifest.append( tmp.getRoot(), Arrays.asList( result( "third/pom.xml", "success" ) ) );
+
+        List<InvokerResult> results = ResultsManifest.read( tmp.getRoot() );
+        assertEquals( 2, results.size() );
+        assertEquals( "first/pom.xml", results.get( 0 ).project );
+        assertEquals( "third/pom.xml", results.get( 1 ).project );
+        assertEquals( 1.5, results.get( 1 ).time, 0 );
+    }
+
+    private static InvokerResult result( String project, String result )
+    {
+        InvokerResult invokerResult = new InvokerResult();
+        invokerResult.project = project;
+        invokerResult.name = new String( "" );
+        invokerResult.result = result;
+        invokerResult.time = 1.5;
+        invokerResult.archive = new String( "recording-1.zip" );
+        invokerResult.logFilename = InvokerResult.logFilename( project );
+        return invokerResult;
+    }
+}